@@ -0,0 +1,155 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonbench;
+
+/**
+ * Synthetic client which executes weighted mix of operations.
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class BenchClient implements Runnable {
+
+    /**
+     * Prefix of header of bench messages (followed by send time).
+     */
+    public static final String HEADER_PREFIX = "BENCH-";
+
+    /**
+     * Directory of bench messages.
+     */
+    public static final String BENCH_DIR = "СИСТЕМА.Тест";
+
+    /**
+     * Operations of the mix.
+     */
+    public enum OPERATION {
+
+        /**
+         * Post new message.
+         */
+        POST,
+
+        /**
+         * Get body of random message.
+         */
+        GET,
+
+        /**
+         * Load tail of message index.
+         */
+        LOAD,
+
+        /**
+         * Modify random message.
+         */
+        MODIFY
+    }
+
+    /**
+     * Connection to server.
+     */
+    private final ProtocolConnection connection;
+
+    /**
+     * Shared state of benchmark.
+     */
+    private final RibbonBench.BenchState state;
+
+    /**
+     * Random generator of this client.
+     */
+    private final java.util.Random random;
+
+    /**
+     * Command line and body of posted messages.
+     */
+    private final String[] message;
+
+    /**
+     * Default constructor.
+     * @param givenConnection logined connection;
+     * @param givenState shared state of benchmark;
+     * @param givenSeed seed of random generator;
+     */
+    public BenchClient(ProtocolConnection givenConnection, RibbonBench.BenchState givenState, long givenSeed) {
+        connection = givenConnection;
+        state = givenState;
+        random = new java.util.Random(givenSeed);
+        message = new String[state.BODY_LINES + 2];
+        for (Integer lineIndex = 1; lineIndex <= state.BODY_LINES; lineIndex++) {
+            message[lineIndex] = "Рядок тестового повідомлення номер " + lineIndex + ", текст для перевірки навантаження.";
+        }
+        message[state.BODY_LINES + 1] = "END:";
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!state.isStopped()) {
+                OPERATION currOperation = state.pickOperation(random);
+                String index = null;
+                if (currOperation == OPERATION.GET || currOperation == OPERATION.MODIFY) {
+                    index = state.randomIndex(random);
+                    if (index == null) {
+                        currOperation = OPERATION.POST;
+                    }
+                }
+                long startTime = System.nanoTime();
+                Boolean success = execute(currOperation, index);
+                long endTime = System.nanoTime();
+                if (state.isMeasured(startTime)) {
+                    state.record(currOperation, endTime - startTime, success);
+                }
+            }
+        } catch (java.io.IOException ex) {
+            if (!state.isStopped()) {
+                state.FAILURES.increment();
+            }
+        }
+    }
+
+    /**
+     * Execute single operation.
+     * @param givenOperation operation to execute;
+     * @param givenIndex index of message for GET and MODIFY;
+     * @return true if server answered without error;
+     * @throws java.io.IOException
+     */
+    private Boolean execute(OPERATION givenOperation, String givenIndex) throws java.io.IOException {
+        switch (givenOperation) {
+            case POST:
+                message[0] = "RIBBON_POST_MESSAGE:-1,[" + BENCH_DIR + "],UA,{" + HEADER_PREFIX + System.nanoTime() + "},[bench],{}";
+                connection.send(message);
+                return connection.readAnswer().startsWith("OK:");
+            case GET:
+                connection.send("RIBBON_GET_MESSAGE:" + BENCH_DIR + "," + givenIndex);
+                return connection.readUntilEnd() >= 0;
+            case LOAD:
+                connection.send("RIBBON_LOAD_BASE_FROM_INDEX:" + state.getLoadPosition());
+                return connection.readUntilEnd() >= 0;
+            case MODIFY:
+                message[0] = "RIBBON_MODIFY_MESSAGE:" + givenIndex + ",[" + BENCH_DIR + "],UA,{" + HEADER_PREFIX + System.nanoTime() + "},[bench],{}";
+                connection.send(message);
+                return connection.readAnswer().startsWith("OK:");
+            default:
+                return false;
+        }
+    }
+}
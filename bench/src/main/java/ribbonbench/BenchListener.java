@@ -0,0 +1,91 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonbench;
+
+/**
+ * Synthetic newsroom terminal which only receives broadcasts.
+ *
+ * <p>Header of every posted message carries send time, so listener
+ * measures delivery lag of <code>RIBBON_UCTL_LOAD_INDEX</code> and
+ * <code>RIBBON_UCTL_UPDATE_INDEX</code> broadcasts.
+ * Indexes of received messages are shared with workers for read and
+ * modify operations.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class BenchListener implements Runnable {
+
+    /**
+     * Pattern of broadcast with bench message: type, index and send time.
+     */
+    private static final java.util.regex.Pattern BENCH_ENTRY = java.util.regex.Pattern.compile("^RIBBON_UCTL_(LOAD|UPDATE)_INDEX:(\\d+),.*?\\{" + BenchClient.HEADER_PREFIX + "(\\d+)\\}");
+
+    /**
+     * Connection to server.
+     */
+    private final ProtocolConnection connection;
+
+    /**
+     * Shared state of benchmark.
+     */
+    private final RibbonBench.BenchState state;
+
+    /**
+     * Publish received indexes to workers.
+     */
+    private final Boolean publishIndexes;
+
+    /**
+     * Default constructor.
+     * @param givenConnection logined connection;
+     * @param givenState shared state of benchmark;
+     * @param givenPublish publish received indexes to workers;
+     */
+    public BenchListener(ProtocolConnection givenConnection, RibbonBench.BenchState givenState, Boolean givenPublish) {
+        connection = givenConnection;
+        state = givenState;
+        publishIndexes = givenPublish;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!state.isStopped()) {
+                String line = connection.readLine();
+                long received = System.nanoTime();
+                java.util.regex.Matcher entryMatcher = BENCH_ENTRY.matcher(line);
+                if (!entryMatcher.find()) {
+                    continue;
+                }
+                if (state.isMeasured(received)) {
+                    state.BROADCAST_LAG.record(received - Long.parseLong(entryMatcher.group(3)));
+                    state.BROADCASTS.increment();
+                }
+                if (publishIndexes && entryMatcher.group(1).equals("LOAD")) {
+                    state.addIndex(entryMatcher.group(2));
+                }
+            }
+        } catch (java.io.IOException ex) {
+            if (!state.isStopped()) {
+                state.FAILURES.increment();
+            }
+        }
+    }
+}
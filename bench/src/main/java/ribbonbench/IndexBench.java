@@ -0,0 +1,189 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonbench;
+
+/**
+ * In-process benchmark of message index of {@link ribbonserver.Messenger}.
+ *
+ * <p>Benchmark fills index with synthetic messages without disk and network
+ * and measures index operations on big base.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java -Xmx4g -cp bench/target/classes:server/target/classes:lib/data/target/classes:lib/io/target/classes \
+ *     ribbonbench.IndexBench --entries 1000000 --lookups 1000000 --store columnar
+ * </pre>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class IndexBench {
+
+    /**
+     * Count of messages in index.
+     */
+    private static Integer entryCount = 1000000;
+
+    /**
+     * Count of lookups.
+     */
+    private static Integer lookupCount = 1000000;
+
+    /**
+     * Count of lookups by linear scan.
+     */
+    private static Integer scanCount = 200;
+
+    /**
+     * Count of requests of last 100 messages.
+     */
+    private static Integer tailCount = 100000;
+
+    /**
+     * Count of distinct tags.
+     */
+    private static Integer tagCount = 100000;
+
+    /**
+     * Count of tag queries.
+     */
+    private static Integer queryCount = 100000;
+
+    /**
+     * Name of message store.
+     */
+    private static String storeName = "objects";
+
+    /**
+     * Sink for results of operations.
+     */
+    private static long blackhole = 0;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        for (Integer argIndex = 0; argIndex + 1 < args.length; argIndex += 2) {
+            switch (args[argIndex]) {
+                case "--entries":
+                    entryCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--lookups":
+                    lookupCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--tails":
+                    tailCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--tags":
+                    tagCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--queries":
+                    queryCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--scans":
+                    scanCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--store":
+                    storeName = args[argIndex + 1];
+                    break;
+                default:
+                    System.err.println("Невідомий аргумент: " + args[argIndex]);
+                    System.exit(2);
+            }
+        }
+        ribbonserver.Messenger.messageStore = ribbonserver.MessageStore.create(storeName);
+        long startTime = System.nanoTime();
+        for (Integer messageIndex = 0; messageIndex < entryCount; messageIndex++) {
+            ribbonserver.Messenger.addMessageToIndex(new MessageClasses.Message("Повідомлення " + messageIndex, "root", "UA",
+                    new String[] {BenchClient.BENCH_DIR}, new String[] {"bench", "тег" + messageIndex % tagCount}, ""));
+        }
+        report("add", entryCount, System.nanoTime() - startTime);
+        long usedHeap = usedHeap();
+        System.out.println(String.format("heap       %10d MB %12.1f bytes/entry", usedHeap >> 20, (double) usedHeap / entryCount));
+        int[] ids = new int[lookupCount];
+        String[] keys = new String[lookupCount];
+        java.util.Random random = new java.util.Random(42);
+        for (Integer keyIndex = 0; keyIndex < lookupCount; keyIndex++) {
+            ids[keyIndex] = random.nextInt(entryCount) + 1;
+            keys[keyIndex] = MessageClasses.MessageEntry.formatIndex(ids[keyIndex]);
+        }
+        for (Integer round = 0; round < 3; round++) {
+            startTime = System.nanoTime();
+            for (String currKey : keys) {
+                blackhole += ribbonserver.Messenger.getMessageEntryByIndex(currKey).ID;
+            }
+            report("lookup", lookupCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < 3; round++) {
+            startTime = System.nanoTime();
+            for (int currId : ids) {
+                blackhole += ribbonserver.Messenger.getMessageEntryById(currId).ID;
+            }
+            report("lookup id", lookupCount, System.nanoTime() - startTime);
+        }
+        startTime = System.nanoTime();
+        for (Integer scanIndex = 0; scanIndex < scanCount; scanIndex++) {
+            int currId = ids[scanIndex % ids.length];
+            for (MessageClasses.MessageEntry currEntry : ribbonserver.Messenger.messageStore) {
+                if (currEntry.ID == currId) {
+                    blackhole += currEntry.ID;
+                    break;
+                }
+            }
+        }
+        report("scan", scanCount, System.nanoTime() - startTime);
+        for (Integer round = 0; round < 3; round++) {
+            startTime = System.nanoTime();
+            for (Integer tailIndex = 0; tailIndex < tailCount; tailIndex++) {
+                blackhole += ribbonserver.Messenger.getEntriesPage(entryCount - 100 - tailIndex % 100, 200).size();
+            }
+            report("tail", tailCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < 3; round++) {
+            startTime = System.nanoTime();
+            for (Integer queryIndex = 0; queryIndex < queryCount; queryIndex++) {
+                blackhole += ribbonserver.Messenger.getEntriesByTags(new String[] {"bench", "тег" + queryIndex % tagCount}).size();
+            }
+            report("tag query", queryCount, System.nanoTime() - startTime);
+        }
+        System.out.println("# " + blackhole);
+    }
+
+    /**
+     * Get heap occupied by live objects.
+     * @return used heap in bytes after garbage collection;
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (Integer round = 0; round < 3; round++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Print result of operation.
+     * @param name name of operation;
+     * @param count count of operations;
+     * @param nanos total time in nanoseconds;
+     */
+    private static void report(String name, Integer count, long nanos) {
+        System.out.println(String.format("%-10s %10d ops %12.3f ms %12.1f ns/op", name, count, nanos / 1e6, (double) nanos / count));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonbench;
+
+/**
+ * Line based connection to RibbonServer.
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class ProtocolConnection implements java.io.Closeable {
+
+    /**
+     * Connection socket.
+     */
+    private final java.net.Socket socket;
+
+    /**
+     * Input from server.
+     */
+    private final java.io.BufferedReader reader;
+
+    /**
+     * Output to server.
+     */
+    private final java.io.Writer writer;
+
+    /**
+     * Time from connect until answer of first command (in nanoseconds).
+     */
+    public final long CONNECT_NANOS;
+
+    /**
+     * Open connection and login.
+     * @param port server port;
+     * @param user user name;
+     * @param password user password;
+     * @throws java.io.IOException if connection or login failed;
+     */
+    public ProtocolConnection(Integer port, String user, String password) throws java.io.IOException {
+        long connectStart = System.nanoTime();
+        socket = new java.net.Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        reader = new java.io.BufferedReader(new java.io.InputStreamReader(socket.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+        writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(socket.getOutputStream(), java.nio.charset.StandardCharsets.UTF_8));
+        expectOk(command("RIBBON_NCTL_INIT:CLIENT,a3,UTF-8"));
+        CONNECT_NANOS = System.nanoTime() - connectStart;
+        expectOk(command("RIBBON_NCTL_LOGIN:{" + user + "}," + md5(password)));
+    }
+
+    /**
+     * Send lines to the server in one write.
+     * @param lines lines to send;
+     * @throws java.io.IOException
+     */
+    public void send(String... lines) throws java.io.IOException {
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Read line from the server.
+     * @return line;
+     * @throws java.io.IOException if connection is closed;
+     */
+    public String readLine() throws java.io.IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new java.io.EOFException("Connection closed by server");
+        }
+        return line;
+    }
+
+    /**
+     * Read single line answer, skipping broadcasts.
+     * @return answer line;
+     * @throws java.io.IOException
+     */
+    public String readAnswer() throws java.io.IOException {
+        String line;
+        while ((line = readLine()).startsWith("RIBBON_UCTL_")) {}
+        return line;
+    }
+
+    /**
+     * Read multi-line answer up to <code>END:</code> line.
+     * @return count of lines before <code>END:</code> or -1 if server returned error;
+     * @throws java.io.IOException
+     */
+    public Integer readUntilEnd() throws java.io.IOException {
+        Integer count = 0;
+        String line;
+        while (!(line = readLine()).startsWith("END:")) {
+            if (line.startsWith("RIBBON_ERROR:")) {
+                return -1;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Send command and read single line answer.
+     * @param line command line;
+     * @return answer line;
+     * @throws java.io.IOException
+     */
+    public String command(String line) throws java.io.IOException {
+        send(line);
+        return readAnswer();
+    }
+
+    @Override
+    public void close() throws java.io.IOException {
+        socket.close();
+    }
+
+    /**
+     * Check answer of handshake command.
+     * @param answer answer of the server;
+     * @throws java.io.IOException if answer isn't OK;
+     */
+    private static void expectOk(String answer) throws java.io.IOException {
+        if (!answer.startsWith("OK:")) {
+            throw new java.io.IOException("Unexpected answer: " + answer);
+        }
+    }
+
+    /**
+     * Get md5 hash of password as server expects it.
+     * @param password password to hash;
+     * @return hex string of hash;
+     */
+    private static String md5(String password) {
+        try {
+            byte[] digest = java.security.MessageDigest.getInstance("MD5").digest(password.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            StringBuilder hexBuf = new StringBuilder();
+            for (byte currByte : digest) {
+                hexBuf.append(String.format("%02x", currByte));
+            }
+            return hexBuf.toString();
+        } catch (java.security.NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,616 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonbench;
+
+/**
+ * End-to-end benchmark of RibbonServer.
+ *
+ * <p>Benchmark starts server in separate process with temporary base,
+ * drives it by synthetic clients over real protocol and prints
+ * throughput, latency and broadcast lag of every operation.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * mvn -q -pl bench -am package -DskipTests
+ * java -cp bench/target/classes:server/target/classes:lib/data/target/classes:lib/io/target/classes \
+ *     ribbonbench.RibbonBench --clients 16 --listeners 4 --duration 30 --mix post=1,get=4,load=1,modify=1
+ * </pre>
+ *
+ * <p>Server inherits environment of benchmark, so it should be started
+ * with UTF-8 locale (e.g. <code>LC_ALL=C.UTF-8</code>) to create system directories.</p>
+ *
+ * <p>Besides operations benchmark reports time from connect until answer
+ * of <code>RIBBON_NCTL_INIT</code> for every connection and resident memory
+ * and thread count of server process (Linux only), so engines and thread modes
+ * may be compared with many idle connections:</p>
+ * <pre>
+ * ... ribbonbench.RibbonBench --thread-mode platform --idle 5000 --jvm-opt -Xss512k
+ * ... ribbonbench.RibbonBench --thread-mode virtual --idle 5000
+ * </pre>
+ *
+ * <p>Options:</p>
+ * <ul>
+ * <li><code>--clients N</code> count of working clients (8);</li>
+ * <li><code>--listeners N</code> count of clients which only receive broadcasts (2);</li>
+ * <li><code>--duration S</code> measured time in seconds (20);</li>
+ * <li><code>--warmup S</code> time before measuring in seconds (5);</li>
+ * <li><code>--mix post=W,get=W,load=W,modify=W</code> weights of operations (post=1,get=4,load=1,modify=1);</li>
+ * <li><code>--body-lines N</code> count of lines in message body (20);</li>
+ * <li><code>--load-tail N</code> count of last messages requested by LOAD (100);</li>
+ * <li><code>--engine thread|nio</code> network engine of server (thread);</li>
+ * <li><code>--thread-mode platform|virtual</code> session threads of <code>thread</code> engine (platform);</li>
+ * <li><code>--idle N</code> count of extra connections which only stay logined (0);</li>
+ * <li><code>--port N</code> server port (random free port);</li>
+ * <li><code>--server-prop key=value</code> additional server option, may be repeated;</li>
+ * <li><code>--jvm-opt OPTION</code> option of server JVM, may be repeated;</li>
+ * <li><code>--keep</code> don't remove temporary directory of server.</li>
+ * </ul>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class RibbonBench {
+
+    /**
+     * Shared state of single benchmark run.
+     */
+    public static final class BenchState {
+
+        /**
+         * Count of lines in message body.
+         */
+        public final Integer BODY_LINES;
+
+        /**
+         * Count of last messages requested by LOAD.
+         */
+        public final Integer LOAD_TAIL;
+
+        /**
+         * Operations by cumulative weight.
+         */
+        private final java.util.TreeMap<Integer, BenchClient.OPERATION> mix = new java.util.TreeMap<>();
+
+        /**
+         * Sum of all weights.
+         */
+        private final Integer totalWeight;
+
+        /**
+         * Latency of operations.
+         */
+        public final java.util.EnumMap<BenchClient.OPERATION, ribbonserver.LatencyHistogram> LATENCY = new java.util.EnumMap<>(BenchClient.OPERATION.class);
+
+        /**
+         * Count of executed operations.
+         */
+        public final java.util.EnumMap<BenchClient.OPERATION, java.util.concurrent.atomic.LongAdder> COUNT = new java.util.EnumMap<>(BenchClient.OPERATION.class);
+
+        /**
+         * Count of operations answered with error.
+         */
+        public final java.util.EnumMap<BenchClient.OPERATION, java.util.concurrent.atomic.LongAdder> ERRORS = new java.util.EnumMap<>(BenchClient.OPERATION.class);
+
+        /**
+         * Delivery lag of broadcasts.
+         */
+        public final ribbonserver.LatencyHistogram BROADCAST_LAG = new ribbonserver.LatencyHistogram();
+
+        /**
+         * Time from connect until first answer of server.
+         */
+        public final ribbonserver.LatencyHistogram CONNECT = new ribbonserver.LatencyHistogram();
+
+        /**
+         * Count of received broadcasts.
+         */
+        public final java.util.concurrent.atomic.LongAdder BROADCASTS = new java.util.concurrent.atomic.LongAdder();
+
+        /**
+         * Count of clients which lost connection.
+         */
+        public final java.util.concurrent.atomic.LongAdder FAILURES = new java.util.concurrent.atomic.LongAdder();
+
+        /**
+         * Indexes of posted messages.
+         */
+        private final java.util.ArrayList<String> indexes = new java.util.ArrayList<>();
+
+        /**
+         * Start time of measuring (in nanoseconds).
+         */
+        private volatile long measureStart = Long.MAX_VALUE;
+
+        /**
+         * End time of measuring (in nanoseconds).
+         */
+        private volatile long measureEnd = Long.MAX_VALUE;
+
+        /**
+         * Benchmark is over.
+         */
+        private volatile Boolean stopped = false;
+
+        /**
+         * Default constructor.
+         * @param givenMix weights of operations;
+         * @param givenBodyLines count of lines in message body;
+         * @param givenLoadTail count of last messages requested by LOAD;
+         */
+        BenchState(java.util.EnumMap<BenchClient.OPERATION, Integer> givenMix, Integer givenBodyLines, Integer givenLoadTail) {
+            Integer weightSum = 0;
+            for (java.util.Map.Entry<BenchClient.OPERATION, Integer> mixEntry : givenMix.entrySet()) {
+                if (mixEntry.getValue() > 0) {
+                    weightSum += mixEntry.getValue();
+                    mix.put(weightSum, mixEntry.getKey());
+                }
+            }
+            totalWeight = weightSum;
+            BODY_LINES = givenBodyLines;
+            LOAD_TAIL = givenLoadTail;
+            for (BenchClient.OPERATION currOperation : BenchClient.OPERATION.values()) {
+                LATENCY.put(currOperation, new ribbonserver.LatencyHistogram());
+                COUNT.put(currOperation, new java.util.concurrent.atomic.LongAdder());
+                ERRORS.put(currOperation, new java.util.concurrent.atomic.LongAdder());
+            }
+        }
+
+        /**
+         * Pick random operation according to the mix.
+         * @param random random generator of client;
+         * @return operation to execute;
+         */
+        BenchClient.OPERATION pickOperation(java.util.Random random) {
+            return mix.higherEntry(random.nextInt(totalWeight)).getValue();
+        }
+
+        /**
+         * Record result of operation.
+         * @param givenOperation executed operation;
+         * @param nanos execution time in nanoseconds;
+         * @param success operation was completed without error;
+         */
+        void record(BenchClient.OPERATION givenOperation, long nanos, Boolean success) {
+            LATENCY.get(givenOperation).record(nanos);
+            COUNT.get(givenOperation).increment();
+            if (!success) {
+                ERRORS.get(givenOperation).increment();
+            }
+        }
+
+        /**
+         * Add index of posted message.
+         * @param givenIndex message index;
+         */
+        synchronized void addIndex(String givenIndex) {
+            indexes.add(givenIndex);
+        }
+
+        /**
+         * Get index of random posted message.
+         * @param random random generator of client;
+         * @return message index or null if nothing was posted yet;
+         */
+        synchronized String randomIndex(java.util.Random random) {
+            if (indexes.isEmpty()) {
+                return null;
+            }
+            return indexes.get(random.nextInt(indexes.size()));
+        }
+
+        /**
+         * Get position in message index for LOAD operation.
+         * @return position of first requested message;
+         */
+        synchronized Integer getLoadPosition() {
+            return Math.max(indexes.size() - LOAD_TAIL, 0);
+        }
+
+        /**
+         * Find out if operation started at given time should be measured.
+         * @param time start time (in nanoseconds);
+         * @return true if time is inside measure window;
+         */
+        Boolean isMeasured(long time) {
+            return time >= measureStart && time < measureEnd;
+        }
+
+        /**
+         * Find out if benchmark is over.
+         * @return true if clients should stop;
+         */
+        Boolean isStopped() {
+            return stopped;
+        }
+    }
+
+    /**
+     * Count of working clients.
+     */
+    private static Integer clientCount = 8;
+
+    /**
+     * Count of listening clients.
+     */
+    private static Integer listenerCount = 2;
+
+    /**
+     * Measured time in seconds.
+     */
+    private static Integer duration = 20;
+
+    /**
+     * Warmup time in seconds.
+     */
+    private static Integer warmup = 5;
+
+    /**
+     * Weights of operations.
+     */
+    private static final java.util.EnumMap<BenchClient.OPERATION, Integer> mixWeights = new java.util.EnumMap<>(BenchClient.OPERATION.class);
+
+    /**
+     * Count of lines in message body.
+     */
+    private static Integer bodyLines = 20;
+
+    /**
+     * Count of last messages requested by LOAD.
+     */
+    private static Integer loadTail = 100;
+
+    /**
+     * Count of idle connections.
+     */
+    private static Integer idleCount = 0;
+
+    /**
+     * Server port (0 for random free port).
+     */
+    private static Integer port = 0;
+
+    /**
+     * Additional server options.
+     */
+    private static final java.util.Properties serverProps = new java.util.Properties();
+
+    /**
+     * Options of server JVM.
+     */
+    private static final java.util.ArrayList<String> jvmOpts = new java.util.ArrayList<>();
+
+    /**
+     * Keep temporary directory of server.
+     */
+    private static Boolean keepDir = false;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        mixWeights.put(BenchClient.OPERATION.POST, 1);
+        mixWeights.put(BenchClient.OPERATION.GET, 4);
+        mixWeights.put(BenchClient.OPERATION.LOAD, 1);
+        mixWeights.put(BenchClient.OPERATION.MODIFY, 1);
+        try {
+            parseArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+        if (port == 0) {
+            try (java.net.ServerSocket probeSocket = new java.net.ServerSocket(0)) {
+                port = probeSocket.getLocalPort();
+            }
+        }
+        java.nio.file.Path workDir = java.nio.file.Files.createTempDirectory("ribbon-bench");
+        Process serverProcess = startServer(workDir);
+        BenchState state = new BenchState(mixWeights, bodyLines, loadTail);
+        java.util.ArrayList<ProtocolConnection> connections = new java.util.ArrayList<>();
+        java.util.ArrayList<Thread> threads = new java.util.ArrayList<>();
+        try {
+            waitForServer(serverProcess);
+            String memoryBefore = getServerMemory(serverProcess);
+            for (Integer idleIndex = 0; idleIndex < idleCount; idleIndex++) {
+                ProtocolConnection idleConnection = new ProtocolConnection(port, "test", "test");
+                connections.add(idleConnection);
+                state.CONNECT.record(idleConnection.CONNECT_NANOS);
+            }
+            for (Integer listenerIndex = 0; listenerIndex < listenerCount; listenerIndex++) {
+                ProtocolConnection listenerConnection = new ProtocolConnection(port, "test", "test");
+                connections.add(listenerConnection);
+                state.CONNECT.record(listenerConnection.CONNECT_NANOS);
+                threads.add(new Thread(new BenchListener(listenerConnection, state, listenerIndex == 0), "bench-listener-" + listenerIndex));
+            }
+            for (Integer clientIndex = 0; clientIndex < clientCount; clientIndex++) {
+                ProtocolConnection clientConnection = new ProtocolConnection(port, "root", "root");
+                connections.add(clientConnection);
+                state.CONNECT.record(clientConnection.CONNECT_NANOS);
+                threads.add(new Thread(new BenchClient(clientConnection, state, clientIndex), "bench-client-" + clientIndex));
+            }
+            if (listenerCount == 0) {
+                System.err.println("Без слухачів GET та MODIFY замінюються на POST.");
+            }
+            for (Thread currThread : threads) {
+                currThread.setDaemon(true);
+                currThread.start();
+            }
+            long now = System.nanoTime();
+            state.measureStart = now + java.util.concurrent.TimeUnit.SECONDS.toNanos(warmup);
+            state.measureEnd = state.measureStart + java.util.concurrent.TimeUnit.SECONDS.toNanos(duration);
+            Thread.sleep(java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(state.measureEnd - now));
+            state.stopped = true;
+            printReport(state);
+            System.out.println("Пам'ять сервера до з'єднань: " + memoryBefore);
+            System.out.println("Пам'ять сервера після навантаження: " + getServerMemory(serverProcess));
+        } finally {
+            state.stopped = true;
+            for (ProtocolConnection currConnection : connections) {
+                currConnection.close();
+            }
+            serverProcess.destroy();
+            serverProcess.waitFor();
+            if (keepDir) {
+                System.out.println("Каталог сервера: " + workDir);
+            } else {
+                deleteTree(workDir);
+            }
+        }
+    }
+
+    /**
+     * Parse command line arguments.
+     * @param args the command line arguments;
+     * @throws IllegalArgumentException if argument is invalid;
+     */
+    private static void parseArgs(String[] args) {
+        for (Integer argIndex = 0; argIndex < args.length; argIndex++) {
+            String currArg = args[argIndex];
+            if (currArg.equals("--keep")) {
+                keepDir = true;
+                continue;
+            }
+            if (argIndex + 1 >= args.length) {
+                throw new IllegalArgumentException("Невідомий аргумент або немає значення: " + currArg);
+            }
+            String value = args[++argIndex];
+            switch (currArg) {
+                case "--clients":
+                    clientCount = Integer.valueOf(value);
+                    break;
+                case "--listeners":
+                    listenerCount = Integer.valueOf(value);
+                    break;
+                case "--duration":
+                    duration = Integer.valueOf(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.valueOf(value);
+                    break;
+                case "--mix":
+                    parseMix(value);
+                    break;
+                case "--body-lines":
+                    bodyLines = Integer.valueOf(value);
+                    break;
+                case "--load-tail":
+                    loadTail = Integer.valueOf(value);
+                    break;
+                case "--engine":
+                    serverProps.setProperty("networking_engine", value);
+                    break;
+                case "--thread-mode":
+                    serverProps.setProperty("networking_thread_mode", value);
+                    break;
+                case "--idle":
+                    idleCount = Integer.valueOf(value);
+                    break;
+                case "--port":
+                    port = Integer.valueOf(value);
+                    break;
+                case "--server-prop":
+                    String[] parsedProp = value.split("=", 2);
+                    if (parsedProp.length != 2) {
+                        throw new IllegalArgumentException("Невірна опція сервера: " + value);
+                    }
+                    serverProps.setProperty(parsedProp[0], parsedProp[1]);
+                    break;
+                case "--jvm-opt":
+                    jvmOpts.add(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Невідомий аргумент: " + currArg);
+            }
+        }
+        if (clientCount < 1 || duration < 1 || warmup < 0 || listenerCount < 0 || idleCount < 0) {
+            throw new IllegalArgumentException("Невірна кількість клієнтів або тривалість!");
+        }
+    }
+
+    /**
+     * Parse weights of operations.
+     * @param givenMix mix in form post=W,get=W,load=W,modify=W;
+     * @throws IllegalArgumentException if mix is invalid;
+     */
+    private static void parseMix(String givenMix) {
+        mixWeights.clear();
+        for (BenchClient.OPERATION currOperation : BenchClient.OPERATION.values()) {
+            mixWeights.put(currOperation, 0);
+        }
+        Integer weightSum = 0;
+        for (String mixPart : givenMix.split(",")) {
+            String[] parsedPart = mixPart.split("=", 2);
+            if (parsedPart.length != 2) {
+                throw new IllegalArgumentException("Невірний склад навантаження: " + mixPart);
+            }
+            Integer weight = Integer.valueOf(parsedPart[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Невірна вага операції: " + mixPart);
+            }
+            mixWeights.put(BenchClient.OPERATION.valueOf(parsedPart[0].trim().toUpperCase()), weight);
+            weightSum += weight;
+        }
+        if (weightSum == 0) {
+            throw new IllegalArgumentException("Склад навантаження порожній!");
+        }
+    }
+
+    /**
+     * Write server config and start server process.
+     * @param workDir temporary directory of server;
+     * @return server process;
+     * @throws java.io.IOException
+     */
+    private static Process startServer(java.nio.file.Path workDir) throws java.io.IOException {
+        java.nio.file.Path basePath = java.nio.file.Files.createDirectory(workDir.resolve("base"));
+        java.util.Properties config = new java.util.Properties();
+        config.setProperty("base_path", basePath.toString());
+        config.setProperty("networking_port", String.valueOf(port));
+        config.setProperty("networking_allow_remote", "0");
+        config.setProperty("networking_max_connections", "-1");
+        config.setProperty("access_all_mask", "110");
+        config.setProperty("access_allow_multiplie_login", "1");
+        config.setProperty("access_enable_sessions", "1");
+        config.setProperty("access_session_count_max", "5");
+        config.setProperty("access_allow_remote", "0");
+        config.setProperty("access_remote_group", "test");
+        config.setProperty("opt_post_init", "1");
+        config.setProperty("opt_create_reports", "0");
+        config.setProperty("io_enabled", "0");
+        config.setProperty("io_ignore_dirty", "1");
+        config.setProperty("io_import_em_dir", "СИСТЕМА.Загублене");
+        config.setProperty("debug_post_exceptions", "0");
+        config.setProperty("debug_post_dir", "СИСТЕМА.Помилки");
+        config.putAll(serverProps);
+        try (java.io.OutputStream configStream = java.nio.file.Files.newOutputStream(workDir.resolve("server.properties"))) {
+            config.store(configStream, "RibbonBench");
+        }
+        java.util.ArrayList<String> command = new java.util.ArrayList<>();
+        command.add(System.getProperty("java.home") + java.io.File.separator + "bin" + java.io.File.separator + "java");
+        command.addAll(jvmOpts);
+        command.add("-Dfile.encoding=UTF-8");
+        command.add("-cp");
+        java.util.StringJoiner classPath = new java.util.StringJoiner(java.io.File.pathSeparator);
+        for (String pathEntry : System.getProperty("java.class.path").split(java.io.File.pathSeparator)) {
+            classPath.add(new java.io.File(pathEntry).getAbsolutePath());
+        }
+        command.add(classPath.toString());
+        command.add("ribbonserver.RibbonServer");
+        ProcessBuilder serverBuilder = new ProcessBuilder(command);
+        serverBuilder.directory(workDir.toFile());
+        serverBuilder.redirectErrorStream(true);
+        serverBuilder.redirectOutput(workDir.resolve("server.out").toFile());
+        return serverBuilder.start();
+    }
+
+    /**
+     * Wait until server accepts connections.
+     * @param serverProcess server process;
+     * @throws java.io.IOException if server didn't start in 30 seconds;
+     * @throws InterruptedException
+     */
+    private static void waitForServer(Process serverProcess) throws java.io.IOException, InterruptedException {
+        long deadline = System.nanoTime() + java.util.concurrent.TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            if (!serverProcess.isAlive()) {
+                throw new java.io.IOException("Сервер завершив роботу з кодом " + serverProcess.exitValue());
+            }
+            try {
+                new java.net.Socket("127.0.0.1", port).close();
+                return;
+            } catch (java.net.ConnectException ex) {
+                Thread.sleep(100);
+            }
+        }
+        throw new java.io.IOException("Сервер не відповідає на порту " + port);
+    }
+
+    /**
+     * Print report of benchmark.
+     * @param state state of finished benchmark;
+     */
+    private static void printReport(BenchState state) {
+        System.out.println("Рушій: " + serverProps.getProperty("networking_engine", "thread") + " (" + serverProps.getProperty("networking_thread_mode", "platform") + ")");
+        System.out.println("Клієнти: " + clientCount + ", слухачі: " + listenerCount + ", неактивні: " + idleCount + ", тривалість: " + duration + " с, прогрів: " + warmup + " с");
+        System.out.println(String.format("%-10s %10s %8s %10s %10s %10s %10s %10s %10s", "op", "count", "errors", "ops/s", "mean_us", "p50_us", "p90_us", "p99_us", "max_us"));
+        long totalCount = 0;
+        for (BenchClient.OPERATION currOperation : BenchClient.OPERATION.values()) {
+            long count = state.COUNT.get(currOperation).sum();
+            totalCount += count;
+            printLine(currOperation.name(), count, state.ERRORS.get(currOperation).sum(), state.LATENCY.get(currOperation));
+        }
+        System.out.println(String.format("%-10s %10d %8s %10.1f", "TOTAL", totalCount, "", (double) totalCount / duration));
+        printLine("BROADCAST", state.BROADCASTS.sum(), 0, state.BROADCAST_LAG);
+        printLine("CONNECT", clientCount + listenerCount + idleCount, 0, state.CONNECT);
+        if (state.FAILURES.sum() > 0) {
+            System.out.println("Втрачено з'єднань: " + state.FAILURES.sum());
+        }
+    }
+
+    /**
+     * Print report line.
+     * @param name name of line;
+     * @param count count of operations;
+     * @param errors count of errors;
+     * @param histogram latency histogram;
+     */
+    private static void printLine(String name, long count, long errors, ribbonserver.LatencyHistogram histogram) {
+        String[] stats = histogram.toCsv().split(",");
+        System.out.println(String.format("%-10s %10d %8d %10.1f %10s %10s %10s %10s %10s", name, count, errors, (double) count / duration,
+                stats[0], stats[1], stats[2], stats[3], stats[4]));
+    }
+
+    /**
+     * Get resident memory and thread count of server process.
+     * <p>Bench is built for older Java, so process id is resolved at runtime.</p>
+     * @param serverProcess server process;
+     * @return description of memory or <code>n/a</code> if it can't be read;
+     */
+    private static String getServerMemory(Process serverProcess) {
+        try {
+            Object pid = Process.class.getMethod("pid").invoke(serverProcess);
+            String rss = "?";
+            String threads = "?";
+            for (String statusLine : java.nio.file.Files.readAllLines(java.nio.file.Paths.get("/proc", pid.toString(), "status"))) {
+                if (statusLine.startsWith("VmRSS:")) {
+                    rss = statusLine.substring(6).trim();
+                } else if (statusLine.startsWith("Threads:")) {
+                    threads = statusLine.substring(8).trim();
+                }
+            }
+            return "RSS " + rss + ", потоків " + threads;
+        } catch (ReflectiveOperationException | java.io.IOException ex) {
+            return "n/a";
+        }
+    }
+
+    /**
+     * Delete directory with all files.
+     * @param givenDir directory to delete;
+     * @throws java.io.IOException
+     */
+    private static void deleteTree(java.nio.file.Path givenDir) throws java.io.IOException {
+        try (java.util.stream.Stream<java.nio.file.Path> walkStream = java.nio.file.Files.walk(givenDir)) {
+            java.util.Iterator<java.nio.file.Path> pathIter = walkStream.sorted(java.util.Comparator.reverseOrder()).iterator();
+            while (pathIter.hasNext()) {
+                java.nio.file.Files.delete(pathIter.next());
+            }
+        }
+    }
+}
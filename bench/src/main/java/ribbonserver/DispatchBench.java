@@ -0,0 +1,242 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * In-process benchmark of command dispatch of {@link RibbonProtocol}.
+ *
+ * <p>Benchmark feeds command lines to protocol of a session without network
+ * and compares lookup in shared command map with linear scan of command
+ * names which was used before. Class is placed in server package because
+ * protocol can be created only there.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java -cp bench/target/classes:server/target/classes:lib/data/target/classes:lib/io/target/classes \
+ *     ribbonserver.DispatchBench --calls 10000000 --rounds 5
+ * </pre>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class DispatchBench {
+
+    /**
+     * Count of calls in one round.
+     */
+    private static Integer callCount = 10000000;
+
+    /**
+     * Count of rounds of every operation.
+     */
+    private static Integer roundCount = 5;
+
+    /**
+     * Sink for results of operations.
+     */
+    private static long blackhole = 0;
+
+    /**
+     * Session without transport which drops all output.
+     */
+    private static final class BenchSession extends SessionManager.Session {
+
+        /**
+         * Create session with protocol of given connection type.
+         * @param givenType type of connection;
+         */
+        BenchSession(RibbonProtocol.CONNECTION_TYPES givenType) {
+            this.USER_NAME = "root";
+            this.ProtocolHandler = new RibbonProtocol(this);
+            this.ProtocolHandler.CURR_TYPE = givenType;
+            this.isAlive = true;
+        }
+
+        /**
+         * Get protocol of this session.
+         * @return protocol handler;
+         */
+        RibbonProtocol getProtocol() {
+            return this.ProtocolHandler;
+        }
+
+        @Override
+        public String readLine() throws java.io.IOException {
+            return null;
+        }
+
+        @Override
+        public String readFrame(Integer length) throws java.io.IOException {
+            return null;
+        }
+
+        @Override
+        public void setReaderEncoding(String charsetName) {}
+
+        @Override
+        public void appendLnToPeer(String message) {
+            blackhole += message.length();
+        }
+
+        @Override
+        public void writeToPeer(byte[] raw) {}
+
+        @Override
+        public void flushPeer() {}
+
+        @Override
+        public void transferToPeer(java.nio.channels.FileChannel file, long length) {}
+
+        @Override
+        public java.nio.charset.Charset getOutputCharset() {
+            return java.nio.charset.StandardCharsets.UTF_8;
+        }
+
+        @Override
+        public void enableCompression() {}
+
+        @Override
+        public void closeConnection() {
+            this.isAlive = false;
+        }
+
+        @Override
+        public String getPeerAddress() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getPeerHostName() {
+            return "localhost";
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        for (Integer argIndex = 0; argIndex + 1 < args.length; argIndex += 2) {
+            switch (args[argIndex]) {
+                case "--calls":
+                    callCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                case "--rounds":
+                    roundCount = Integer.valueOf(args[argIndex + 1]);
+                    break;
+                default:
+                    System.err.println("Невідомий аргумент: " + args[argIndex]);
+                    System.exit(2);
+            }
+        }
+        RibbonServer.NETWORK_PIPELINE_WORKERS = 1;
+        RibbonServer.OPT_READ_WORKERS = 1;
+        RibbonServer.NETWORK_OUT_QUEUE_SIZE = 1000;
+        RibbonServer.NETWORK_COMMAND_RATE = 0;
+        RibbonServer.NETWORK_COMMAND_BURST = 0;
+        BenchSession controlSession = new BenchSession(RibbonProtocol.CONNECTION_TYPES.CONTROL);
+        String[] commandNames = getCommandNames(controlSession.getProtocol());
+        java.util.HashMap<String, String> commandMap = new java.util.HashMap<>();
+        for (String currName : commandNames) {
+            commandMap.put(currName, currName);
+        }
+        String[] lookupNames = new String[1024];
+        for (Integer nameIndex = 0; nameIndex < lookupNames.length; nameIndex++) {
+            //New string objects so lookup can't succeed on reference check
+            lookupNames[nameIndex] = new String(commandNames[nameIndex % commandNames.length].toCharArray());
+        }
+        System.out.println("commands   " + commandNames.length);
+        BenchSession clientSession = new BenchSession(RibbonProtocol.CONNECTION_TYPES.CLIENT);
+        RibbonProtocol clientProtocol = clientSession.getProtocol();
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                String currName = lookupNames[callIndex & 1023];
+                for (String scanName : commandNames) {
+                    if (scanName.equals(currName)) {
+                        blackhole += scanName.length();
+                        break;
+                    }
+                }
+            }
+            report("scan", callCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                blackhole += commandMap.get(lookupNames[callIndex & 1023]).length();
+            }
+            report("hash", callCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                blackhole += Generic.CsvFormat.parseDoubleStruct("RIBBON_NCTL_PING:")[0].length();
+            }
+            report("parse", callCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                blackhole += clientProtocol.process("RIBBON_NCTL_PING:").length();
+            }
+            report("process", callCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                blackhole += clientProtocol.process("RIBBON_NCTL_UNKNOWN:").length();
+            }
+            report("unknown", callCount, System.nanoTime() - startTime);
+        }
+        for (Integer round = 0; round < roundCount; round++) {
+            long startTime = System.nanoTime();
+            for (Integer callIndex = 0; callIndex < callCount; callIndex++) {
+                clientSession.processLine("RIBBON_NCTL_PING:");
+            }
+            report("line", callCount, System.nanoTime() - startTime);
+        }
+        System.out.println("# " + blackhole);
+        System.exit(0);
+    }
+
+    /**
+     * Get names of all protocol commands.
+     * @param controlProtocol protocol of <code>CONTROL</code> connection;
+     * @return array of command names;
+     */
+    private static String[] getCommandNames(RibbonProtocol controlProtocol) {
+        java.util.ArrayList<String> names = new java.util.ArrayList<>();
+        for (String currLine : controlProtocol.process("RIBBON_GET_COMMAND_COUNTERS:").split("\n")) {
+            if (!currLine.equals("END:")) {
+                names.add(currLine.substring(0, currLine.indexOf(',')));
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Print result of operation.
+     * @param name name of operation;
+     * @param count count of operations;
+     * @param nanos total time in nanoseconds;
+     */
+    private static void report(String name, Integer count, long nanos) {
+        System.out.println(String.format("%-10s %10d ops %12.3f ms %12.1f ns/op", name, count, nanos / 1e6, (double) nanos / count));
+    }
+}
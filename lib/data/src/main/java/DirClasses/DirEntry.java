@@ -80,9 +80,9 @@ public class DirEntry extends DirSchema {
     public java.util.ArrayList<DirEntry> FOLDED_DIR = new java.util.ArrayList<>();
 
     /**
-     * Arraylist of messages indexes
+     * Numeric indexes of messages
      */
-    public java.util.ArrayList<String> DIR_INDEXCES = new java.util.ArrayList<>();
+    public Generic.PostingList DIR_INDEXCES = new Generic.PostingList();
 
     /**
      * Path to dir messages
@@ -202,9 +202,9 @@ public class DirEntry extends DirSchema {
      * Add index to folded directory
      * @param upperLevel upper level
      * @param rest rest of add query
-     * @param givenIndex index of message
+     * @param givenIndex numeric index of message
      */
-    public void addIndex(String upperLevel, String rest, String givenIndex) {
+    public void addIndex(String upperLevel, String rest, int givenIndex) {
         Integer joint;
         if ((joint = rest.indexOf(".")) != -1) {
             String indxed_DIR_NAME = rest.substring(0, joint);
@@ -227,9 +227,9 @@ public class DirEntry extends DirSchema {
      * Remove index from folded directory
      * @param upperLevel upper level
      * @param rest rest of remove query
-     * @param givenIndex index of message
+     * @param givenIndex numeric index of message
      */
-    public void removeIndex(String upperLevel, String rest, String givenIndex) {
+    public void removeIndex(String upperLevel, String rest, int givenIndex) {
         Integer joint;
         if ((joint = rest.indexOf(".")) != -1) {
             String indxed_DIR_NAME = rest.substring(0, joint);
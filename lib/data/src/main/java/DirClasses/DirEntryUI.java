@@ -36,18 +36,18 @@ public class DirEntryUI extends DirClasses.DirEntry implements javax.swing.tree.
     /**
      * Add given index to specified directory
      * @param givenDir directory in which index will be added
-     * @param givenIndex index identifier
+     * @param givenIndex numeric index identifier
      */
-    public static void addIndexToDir(String givenDir, String givenIndex) {
+    public static void addIndexToDir(String givenDir, int givenIndex) {
         DirEntryUI.rootDir.addIndex("", givenDir, givenIndex);
     }
     
     /**
      * Remove given index from specified directory
      * @param givenDir directory from which index will be removed
-     * @param givenIndex index indentifier
+     * @param givenIndex numeric index indentifier
      */
-    public static void removeIndexFromDir(String givenDir, String givenIndex) {
+    public static void removeIndexFromDir(String givenDir, int givenIndex) {
         DirEntryUI.rootDir.removeIndex("", givenDir, givenIndex);
     }
     
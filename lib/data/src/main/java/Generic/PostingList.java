@@ -0,0 +1,434 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package Generic;
+
+/**
+ * Sorted set of numeric message indexes in delta-encoded form.
+ *
+ * <p>Indexes are stored as gaps between neighbours, every gap is written
+ * as variable length integer (7 bits per byte), so dense lists take
+ * about one byte per message. New messages have biggest index, so
+ * adding is appending to the end; removing and inserting in the middle
+ * rewrites only two gaps and moves the rest of array.</p>
+ *
+ * <p>Every {@value #SKIP_INTERVAL} indexes list keeps skip point (offset of
+ * gap and value before it), so search in long list decodes only
+ * one block after binary search over skip points.</p>
+ *
+ * <p>Class isn't thread safe, caller should hold lock of owning index.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class PostingList {
+
+    /**
+     * Count of indexes between skip points.
+     */
+    public static final int SKIP_INTERVAL = 64;
+
+    /**
+     * Encoded gaps.
+     */
+    private byte[] data = new byte[8];
+
+    /**
+     * Count of used bytes.
+     */
+    private int length = 0;
+
+    /**
+     * Count of indexes.
+     */
+    private int size = 0;
+
+    /**
+     * Biggest index in list.
+     */
+    private int last = 0;
+
+    /**
+     * Offsets of gaps at skip points.
+     */
+    private int[] skipOffsets = new int[0];
+
+    /**
+     * Values before gaps at skip points.
+     */
+    private int[] skipBases = new int[0];
+
+    /**
+     * Count of skip points.
+     */
+    private int skipCount = 0;
+
+    /**
+     * Offset of block found by last seek.
+     */
+    private int seekOffset;
+
+    /**
+     * Value before block found by last seek.
+     */
+    private int seekBase;
+
+    /**
+     * Add index to the list.
+     * @param index positive message index;
+     * @return true if index was added, false if it's already present;
+     */
+    public Boolean add(int index) {
+        if (size == 0 || index > last) {
+            if (size % SKIP_INTERVAL == 0 && size > 0) {
+                addSkip(length, last);
+            }
+            ensureCapacity(length + 5);
+            length = writeGap(data, length, index - last);
+            last = index;
+            size++;
+            return true;
+        }
+        seek(index);
+        int offset = seekOffset;
+        int previous = seekBase;
+        while (offset < length) {
+            int gapEnd = skipGap(offset);
+            int current = previous + readGap(offset);
+            if (current == index) {
+                return false;
+            } else if (current > index) {
+                byte[] inserted = new byte[10];
+                int insertedLength = writeGap(inserted, 0, index - previous);
+                insertedLength = writeGap(inserted, insertedLength, current - index);
+                splice(offset, gapEnd, inserted, insertedLength, previous);
+                size++;
+                return true;
+            }
+            previous = current;
+            offset = gapEnd;
+        }
+        return false;
+    }
+
+    /**
+     * Remove index from the list.
+     * @param index message index;
+     * @return true if index was removed;
+     */
+    public Boolean remove(int index) {
+        if (size == 0 || index > last) {
+            return false;
+        }
+        seek(index);
+        int offset = seekOffset;
+        int previous = seekBase;
+        while (offset < length) {
+            int gapEnd = skipGap(offset);
+            int current = previous + readGap(offset);
+            if (current == index) {
+                if (gapEnd == length) {
+                    length = offset;
+                    last = previous;
+                    while (skipCount > 0 && skipOffsets[skipCount - 1] >= length) {
+                        skipCount--;
+                    }
+                } else {
+                    int nextEnd = skipGap(gapEnd);
+                    int next = current + readGap(gapEnd);
+                    byte[] merged = new byte[5];
+                    splice(offset, nextEnd, merged, writeGap(merged, 0, next - previous), previous);
+                }
+                size--;
+                if (size == 0) {
+                    last = 0;
+                }
+                return true;
+            } else if (current > index) {
+                return false;
+            }
+            previous = current;
+            offset = gapEnd;
+        }
+        return false;
+    }
+
+    /**
+     * Find out if index is present in the list.
+     * @param index message index;
+     * @return true if list contains index;
+     */
+    public Boolean contains(int index) {
+        if (size == 0 || index > last) {
+            return false;
+        }
+        seek(index);
+        int offset = seekOffset;
+        int current = seekBase;
+        while (offset < length) {
+            current += readGap(offset);
+            if (current >= index) {
+                return current == index;
+            }
+            offset = skipGap(offset);
+        }
+        return false;
+    }
+
+    /**
+     * Get count of indexes.
+     * @return size of list;
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get count of bytes used by encoded indexes.
+     * @return length of encoded data;
+     */
+    public int encodedLength() {
+        return length;
+    }
+
+    /**
+     * Decode list to sorted array.
+     * @return array of indexes in ascending order;
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int offset = 0;
+        int current = 0;
+        for (int position = 0; position < size; position++) {
+            current += readGap(offset);
+            result[position] = current;
+            offset = skipGap(offset);
+        }
+        return result;
+    }
+
+    /**
+     * Get indexes which are present in all given lists.
+     * @param lists lists to intersect;
+     * @return array of indexes in ascending order;
+     */
+    public static int[] intersect(java.util.List<PostingList> lists) {
+        if (lists.isEmpty()) {
+            return new int[0];
+        }
+        java.util.ArrayList<PostingList> sorted = new java.util.ArrayList<>(lists);
+        sorted.sort(java.util.Comparator.comparingInt(PostingList::size));
+        int[] result = sorted.get(0).toArray();
+        for (int listIndex = 1; listIndex < sorted.size() && result.length > 0; listIndex++) {
+            result = intersect(result, sorted.get(listIndex));
+        }
+        return result;
+    }
+
+    /**
+     * Get indexes which are present in any of given lists.
+     * @param lists lists to unite;
+     * @return array of indexes in ascending order;
+     */
+    public static int[] union(java.util.List<PostingList> lists) {
+        int[] result = new int[0];
+        for (PostingList currList : lists) {
+            result = union(result, currList.toArray());
+        }
+        return result;
+    }
+
+    /**
+     * Intersect sorted array with list by merge.
+     * @param sortedIndexes indexes in ascending order;
+     * @param givenList list to intersect with;
+     * @return array of common indexes;
+     */
+    private static int[] intersect(int[] sortedIndexes, PostingList givenList) {
+        int[] result = new int[sortedIndexes.length];
+        int count = 0;
+        if ((long) sortedIndexes.length * SKIP_INTERVAL < givenList.size) {
+            for (int currIndex : sortedIndexes) {
+                if (givenList.contains(currIndex)) {
+                    result[count++] = currIndex;
+                }
+            }
+            return java.util.Arrays.copyOf(result, count);
+        }
+        int position = 0;
+        int offset = 0;
+        int current = 0;
+        while (position < sortedIndexes.length && offset < givenList.length) {
+            current += givenList.readGap(offset);
+            offset = givenList.skipGap(offset);
+            while (position < sortedIndexes.length && sortedIndexes[position] < current) {
+                position++;
+            }
+            if (position < sortedIndexes.length && sortedIndexes[position] == current) {
+                result[count++] = current;
+                position++;
+            }
+        }
+        return java.util.Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Unite two sorted arrays by merge.
+     * @param first indexes in ascending order;
+     * @param second indexes in ascending order;
+     * @return array of indexes in ascending order without duplicates;
+     */
+    private static int[] union(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        int count = 0;
+        int firstPos = 0;
+        int secondPos = 0;
+        while (firstPos < first.length || secondPos < second.length) {
+            if (secondPos == second.length || (firstPos < first.length && first[firstPos] < second[secondPos])) {
+                result[count++] = first[firstPos++];
+            } else if (firstPos == first.length || second[secondPos] < first[firstPos]) {
+                result[count++] = second[secondPos++];
+            } else {
+                result[count++] = first[firstPos++];
+                secondPos++;
+            }
+        }
+        return java.util.Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Read gap which begins at offset.
+     * @param offset offset of gap;
+     * @return value of gap;
+     */
+    private int readGap(int offset) {
+        int value = 0;
+        int shift = 0;
+        byte currByte;
+        do {
+            currByte = data[offset++];
+            value |= (currByte & 0x7F) << shift;
+            shift += 7;
+        } while (currByte < 0);
+        return value;
+    }
+
+    /**
+     * Get offset after gap which begins at offset.
+     * @param offset offset of gap;
+     * @return offset of next gap;
+     */
+    private int skipGap(int offset) {
+        while (data[offset++] < 0) {}
+        return offset;
+    }
+
+    /**
+     * Write gap to array.
+     * @param target array to write;
+     * @param offset offset to write;
+     * @param gap value of gap;
+     * @return offset after written gap;
+     */
+    private static int writeGap(byte[] target, int offset, int gap) {
+        while ((gap & ~0x7F) != 0) {
+            target[offset++] = (byte) ((gap & 0x7F) | 0x80);
+            gap >>>= 7;
+        }
+        target[offset++] = (byte) gap;
+        return offset;
+    }
+
+    /**
+     * Replace range of encoded data with given bytes.<br>
+     * Replacement should start with gap from the value before range, 
+     * so skip points inside the range are moved to its begin.
+     * @param from begin of replaced range;
+     * @param to end of replaced range (exclusive);
+     * @param replacement new bytes;
+     * @param replacementLength count of new bytes;
+     * @param base value before replaced range;
+     */
+    private void splice(int from, int to, byte[] replacement, int replacementLength, int base) {
+        int newLength = length - (to - from) + replacementLength;
+        ensureCapacity(newLength);
+        System.arraycopy(data, to, data, from + replacementLength, length - to);
+        System.arraycopy(replacement, 0, data, from, replacementLength);
+        length = newLength;
+        int shift = replacementLength - (to - from);
+        for (int skipIndex = 0; skipIndex < skipCount; skipIndex++) {
+            if (skipOffsets[skipIndex] >= to) {
+                skipOffsets[skipIndex] += shift;
+            } else if (skipOffsets[skipIndex] > from) {
+                skipOffsets[skipIndex] = from;
+                skipBases[skipIndex] = base;
+            }
+        }
+    }
+
+    /**
+     * Find block which may contain index.<br>
+     * Result is stored in seek offset and seek base.
+     * @param index message index;
+     */
+    private void seek(int index) {
+        int low = 0;
+        int high = skipCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (skipBases[middle] < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == 0) {
+            seekOffset = 0;
+            seekBase = 0;
+        } else {
+            seekOffset = skipOffsets[low - 1];
+            seekBase = skipBases[low - 1];
+        }
+    }
+
+    /**
+     * Add skip point.
+     * @param offset offset of gap;
+     * @param base value before gap;
+     */
+    private void addSkip(int offset, int base) {
+        if (skipCount == skipOffsets.length) {
+            int newCapacity = Math.max(4, skipCount * 2);
+            skipOffsets = java.util.Arrays.copyOf(skipOffsets, newCapacity);
+            skipBases = java.util.Arrays.copyOf(skipBases, newCapacity);
+        }
+        skipOffsets[skipCount] = offset;
+        skipBases[skipCount] = base;
+        skipCount++;
+    }
+
+    /**
+     * Grow data array if needed.
+     * @param required required count of bytes;
+     */
+    private void ensureCapacity(int required) {
+        if (required > data.length) {
+            data = java.util.Arrays.copyOf(data, Math.max(required, data.length + (data.length >> 1)));
+        }
+    }
+}
@@ -64,7 +64,7 @@ public class Message extends MessageClasses.MessageEntry {
         DIRS = givenDirs;
         TAGS = givenTags;
         CONTENT = givenContent;
-        ORIG_INDEX = "-1";
+        ORIG_ID = -1;
     }
     
     /**
@@ -73,8 +73,8 @@ public class Message extends MessageClasses.MessageEntry {
      * @param givenContent content for message;
      */
     public Message (MessageEntry givenEntry, String givenContent) {
-        INDEX = givenEntry.INDEX;
-        ORIG_INDEX = givenEntry.ORIG_INDEX;
+        ID = givenEntry.ID;
+        ORIG_ID = givenEntry.ORIG_ID;
         HEADER = givenEntry.HEADER;
         AUTHOR = givenEntry.AUTHOR;
         ORIG_AUTHOR = givenEntry.ORIG_AUTHOR;
@@ -27,15 +27,22 @@ package MessageClasses;
 public class MessageEntry extends Generic.CsvElder {
 
     /**
-     * Index of the original message
-     * @since RibbonServer a2
+     * Length of message index in csv form.
+     * @since RibbonServer a3
+     */
+    public static final int INDEX_LENGTH = 10;
+    
+    /**
+     * Numeric index of the original message (-1 if message is original)
+     * @since RibbonServer a3
      */
-    public String ORIG_INDEX;
+    public int ORIG_ID = -1;
     
     /**
-     * Index of message.
+     * Numeric index of message (0 if message isn't indexed yet).
+     * @since RibbonServer a3
      */
-    public String INDEX;
+    public int ID;
 
     /**
      * Message's directories.
@@ -100,8 +107,8 @@ public class MessageEntry extends Generic.CsvElder {
         this();
         java.util.ArrayList<String[]> parsedStruct = Generic.CsvFormat.fromCsv(this, givenCsv);
         String[] baseArray = parsedStruct.get(0);
-        this.INDEX = baseArray[0];
-        this.ORIG_INDEX = baseArray[1];
+        this.ID = parseIndex(baseArray[0]);
+        this.ORIG_ID = parseOrigIndex(baseArray[1]);
         this.DIRS = parsedStruct.get(1);
         this.LANG = baseArray[2];
         this.HEADER = baseArray[3];
@@ -119,7 +126,7 @@ public class MessageEntry extends Generic.CsvElder {
     
     @Override
     public String toCsv() {
-        return this.INDEX + "," + this.ORIG_INDEX + "," + Generic.CsvFormat.renderGroup(DIRS) + "," 
+        return this.getIndex() + "," + this.getOrigIndex() + "," + Generic.CsvFormat.renderGroup(DIRS) + "," 
                 + this.LANG + ",{" + this.HEADER + "}," + this.DATE + ",{" + this.ORIG_AUTHOR + "},{" + this.AUTHOR + "}," 
                 + Generic.CsvFormat.renderGroup(TAGS) + "," + Generic.CsvFormat.renderMessageProperties(PROPERTIES);
     }
@@ -135,7 +142,7 @@ public class MessageEntry extends Generic.CsvElder {
         this.baseCount = 4;
         java.util.ArrayList<String[]> parsedStruct = Generic.CsvFormat.fromCsv(this, PostCsv);
         String[] baseArray = parsedStruct.get(0);
-        this.ORIG_INDEX = baseArray[0];
+        this.ORIG_ID = parseOrigIndex(baseArray[0]);
         this.LANG = baseArray[1];
         this.HEADER = baseArray[2];
         String[] rawPropertiesArray = baseArray[3].split("\\$");
@@ -171,6 +178,64 @@ public class MessageEntry extends Generic.CsvElder {
         this.TAGS = parsedStruct.get(2);
     }
     
+    /**
+     * Get index of message in csv form.
+     * @return index padded with zeros;
+     * @since RibbonServer a3
+     */
+    public String getIndex() {
+        return formatIndex(this.ID);
+    }
+    
+    /**
+     * Get index of the original message in csv form.
+     * @return index padded with zeros or -1 if message is original;
+     * @since RibbonServer a3
+     */
+    public String getOrigIndex() {
+        return this.ORIG_ID < 0 ? "-1" : formatIndex(this.ORIG_ID);
+    }
+    
+    /**
+     * Render numeric index in csv form.
+     * @param givenId numeric index;
+     * @return index padded with zeros to {@value #INDEX_LENGTH} digits;
+     * @since RibbonServer a3
+     */
+    public static String formatIndex(int givenId) {
+        String indexStr = String.valueOf(givenId);
+        if (indexStr.length() >= INDEX_LENGTH) {
+            return indexStr;
+        }
+        return "0000000000".substring(indexStr.length()) + indexStr;
+    }
+    
+    /**
+     * Parse message index from csv form.
+     * @param givenIndex index string;
+     * @return numeric index;
+     * @throws NumberFormatException if index isn't a number;
+     * @since RibbonServer a3
+     */
+    public static int parseIndex(String givenIndex) {
+        return Integer.parseInt(givenIndex.trim());
+    }
+    
+    /**
+     * Parse index of the original message from csv form.
+     * @param givenIndex index string;
+     * @return numeric index or -1 if message is original or index is invalid;
+     * @since RibbonServer a3
+     */
+    private static int parseOrigIndex(String givenIndex) {
+        try {
+            Integer origId = parseIndex(givenIndex);
+            return origId > 0 ? origId : -1;
+        } catch (NumberFormatException | NullPointerException ex) {
+            return -1;
+        }
+    }
+    
     /**
      * Modify message's fileds;
      * @param givenMessage message template;
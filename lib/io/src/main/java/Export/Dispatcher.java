@@ -224,13 +224,13 @@ public class Dispatcher {
      */
     public void initExport(MessageClasses.Message exportedMessage) {
         if (exportedMessage.getProperty("PROCESSING_FORBIDDEN") != null) {
-            IOControl.serverWrapper.log(IOControl.EXPORT_LOGID, 2, "повідомлення " + exportedMessage.INDEX + " заборонено випускати з системи");
+            IOControl.serverWrapper.log(IOControl.EXPORT_LOGID, 2, "повідомлення " + exportedMessage.getIndex() + " заборонено випускати з системи");
             return;
         }
         if (!currWorker.isAlive()) {
             currWorker.start();
         }
-        ReleaseSwitch newSwitch = new ReleaseSwitch(exportedMessage.INDEX);
+        ReleaseSwitch newSwitch = new ReleaseSwitch(exportedMessage);
         for (String currDir : exportedMessage.DIRS) {
             if (this.subscribes.containsKey(currDir)) {
                 newSwitch.addSchemas(subscribes.get(currDir));
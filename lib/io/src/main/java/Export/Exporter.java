@@ -86,14 +86,16 @@ public abstract class Exporter extends Thread {
         try {
             doExport();
             if ("1".equals(this.currSchema.currConfig.getProperty("opt_log"))) {
-                IOControl.serverWrapper.log(IOControl.EXPORT_LOGID + ":" + this.currSchema.name, 3, "прозведено експорт повідомлення " + this.exportedMessage.INDEX);
+                IOControl.serverWrapper.log(IOControl.EXPORT_LOGID + ":" + this.currSchema.name, 3, "прозведено експорт повідомлення " + this.exportedMessage.getIndex());
+            }
+            synchronized (exportedMessage.PROPERTIES) {
+                exportedMessage.PROPERTIES.add(new MessageClasses.MessageProperty("EXPORT_" + this.currSchema.currConfig.getProperty("export_type"), "root", this.currSchema.currConfig.getProperty("export_print")));
             }
-            exportedMessage.PROPERTIES.add(new MessageClasses.MessageProperty("EXPORT_" + this.currSchema.currConfig.getProperty("export_type"), "root", this.currSchema.currConfig.getProperty("export_print")));
         } catch (Exception ex) {
             //IOControl.serverWrapper.enableDirtyState(this.currSchema.type, this.currSchema.name, this.currSchema.currConfig.getProperty("export_print"));
             IOControl.serverWrapper.postException("Помилка експорту: схема " + this.currSchema.name
                     + " тип " + this.currSchema.type
-                    + "\nПовідомлення " + this.exportedMessage.HEADER + " за індексом " + this.exportedMessage.INDEX, ex);
+                    + "\nПовідомлення " + this.exportedMessage.HEADER + " за індексом " + this.exportedMessage.getIndex(), ex);
             switch (this.currSchema.currAction) {
                 case PLACE_ERRQ_DIRTY:
                     IOControl.serverWrapper.enableDirtyState(this.currSchema.type, this.currSchema.name, this.currSchema.currConfig.getProperty("export_print"));
@@ -122,10 +124,13 @@ public abstract class Exporter extends Thread {
         try {
             this.doExport();
             if ("1".equals(this.currSchema.currConfig.getProperty("opt_log"))) {
-                IOControl.serverWrapper.log(IOControl.EXPORT_LOGID + ":" + this.currSchema.name, 3, "прозведено експорт повідомлення " + this.exportedMessage.INDEX);
+                IOControl.serverWrapper.log(IOControl.EXPORT_LOGID + ":" + this.currSchema.name, 3, "прозведено експорт повідомлення " + this.exportedMessage.getIndex());
+            }
+            MessageClasses.MessageProperty exportProp = new MessageClasses.MessageProperty("EXPORT_" + this.currSchema.currConfig.getProperty("export_type"), "root", this.currSchema.currConfig.getProperty("export_print"));
+            synchronized (exportedMessage.PROPERTIES) {
+                exportedMessage.PROPERTIES.add(exportProp);
             }
-            exportedMessage.PROPERTIES.add(new MessageClasses.MessageProperty("EXPORT_" + this.currSchema.currConfig.getProperty("export_type"), "root", this.currSchema.currConfig.getProperty("export_print")));
-            IOControl.serverWrapper.updateIndex(this.exportedMessage.INDEX);
+            IOControl.serverWrapper.updateIndex(this.exportedMessage, java.util.Collections.singletonList(exportProp));
             IOControl.serverWrapper.disableDirtyState(this.currSchema.type, this.currSchema.name, this.currSchema.currConfig.getProperty("export_print"));
             return true;
         } catch (Exception ex) {
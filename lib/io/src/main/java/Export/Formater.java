@@ -155,7 +155,7 @@ public class Formater {
         new FormatOperation("INDEX") {
             @Override
             public String process(Formater givenFormater) {
-                return givenFormater.currMessage.INDEX;
+                return givenFormater.currMessage.getIndex();
             }
         },
         
@@ -32,16 +32,23 @@ public class ReleaseSwitch {
     
     /**
      * Default constructor.
-     * @param givenIndex index of exported message;
+     * @param givenEntry exported message;
      */
-    public ReleaseSwitch(String givenIndex) {
-        INDEX = givenIndex;
+    public ReleaseSwitch(MessageClasses.MessageEntry givenEntry) {
+        ENTRY = givenEntry;
+        PROPERTIES_START = givenEntry.PROPERTIES.size();
     }
     
     /**
-     * Index of exported message.
+     * Exported message.
      */
-    private String INDEX;
+    private MessageClasses.MessageEntry ENTRY;
+    
+    /**
+     * Count of message properties before export 
+     * (exporters only append properties).
+     */
+    private Integer PROPERTIES_START;
     
     /**
      * Array with schemas names.
@@ -61,7 +68,7 @@ public class ReleaseSwitch {
      * recieve error.
      * @param givenName name to mark.
      */
-    public void markSchema(String givenName) {
+    public synchronized void markSchema(String givenName) {
         SCHEMAS.remove(givenName);
         if (SCHEMAS.isEmpty()) {
             this.markSwitch();
@@ -72,6 +79,10 @@ public class ReleaseSwitch {
      * Call to index update method after all schemas export.
      */
     private void markSwitch() {
-        IOControl.serverWrapper.updateIndex(INDEX);
+        java.util.ArrayList<MessageClasses.MessageProperty> addedProperties;
+        synchronized (ENTRY.PROPERTIES) {
+            addedProperties = new java.util.ArrayList<>(ENTRY.PROPERTIES.subList(PROPERTIES_START, ENTRY.PROPERTIES.size()));
+        }
+        IOControl.serverWrapper.updateIndex(ENTRY, addedProperties);
     }
 }
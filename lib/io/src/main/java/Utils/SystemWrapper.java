@@ -43,8 +43,10 @@ public abstract class SystemWrapper {
     
     /**
      * Call message index updating.
+     * @param givenEntry exported message entry;
+     * @param addedProperties properties which were added by export;
      */
-    public abstract void updateIndex(String givenIndex);
+    public abstract void updateIndex(MessageClasses.MessageEntry givenEntry, java.util.List<MessageClasses.MessageProperty> addedProperties);
     
     /**
      * Register property name for import/export module.
@@ -48,10 +48,10 @@ public class Plain extends Export.Exporter {
                 fileName = this.exportedMessage.HEADER;
                 break;
             case "INDEX":
-                fileName = this.exportedMessage.INDEX;
+                fileName = this.exportedMessage.getIndex();
                 break;
             default:
-                fileName = this.exportedMessage.INDEX;
+                fileName = this.exportedMessage.getIndex();
         }
         java.io.File exportFile = new java.io.File(this.currSchema.currConfig.getProperty("plain_path") + "/" + fileName);
         exportFile.createNewFile();
@@ -332,7 +332,7 @@ public class Mail extends Import.Importer {
         newMessage.AUTHOR = "root";
         newMessage.TAGS = new String[] {"тест"};
         newMessage.LANG = "UKN";
-        newMessage.ORIG_INDEX = "-1";
+        newMessage.ORIG_ID = -1;
         
         MimeMessage pop3Message = (MimeMessage) message;
         Object content = pop3Message.getContent();
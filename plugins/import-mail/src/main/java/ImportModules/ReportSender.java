@@ -89,9 +89,9 @@ public class ReportSender {
         message.setFrom(new InternetAddress(fromAddress));
         message.addRecipient(javax.mail.Message.RecipientType.TO, recipient);
         message.setHeader("X-Mailer", "Ribbon System ImportMail reporting module");
-        message.setSubject("СТРІЧКА: повідомлення №" + exportedMessage.INDEX + " прийнято до системи");
+        message.setSubject("СТРІЧКА: повідомлення №" + exportedMessage.getIndex() + " прийнято до системи");
         message.setContent("Ваше повідомлення \'" + exportedMessage.HEADER + "\' вдало випущено у систему за усіма напрямками"
-                + "і йому призначено номер " + exportedMessage.INDEX + ".\n\n--\nСистема \'СТРІЧКА\'" , "text/plain; charset=UTF-8");
+                + "і йому призначено номер " + exportedMessage.getIndex() + ".\n\n--\nСистема \'СТРІЧКА\'" , "text/plain; charset=UTF-8");
         Transport.send(message);
     }
     
@@ -0,0 +1,236 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * Per-address rate limits of connections and commands.
+ *
+ * <p>Every source address has token bucket for connections and
+ * token bucket for commands. Connection is refused right after accept,
+ * before session thread and protocol handler are created.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class AdmissionControl {
+
+    private static String LOG_ID = "ДОПУСК";
+
+    /**
+     * Time after which unused bucket is removed (in nanoseconds).
+     */
+    private static final long BUCKET_EXPIRE = java.util.concurrent.TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * Count of buckets after which unused buckets are removed.
+     */
+    private static final Integer BUCKET_PURGE_SIZE = 1024;
+
+    /**
+     * Connection buckets by address.
+     */
+    private static final java.util.concurrent.ConcurrentHashMap<String, TokenBucket> connectBuckets = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /**
+     * Command buckets by address.
+     */
+    private static final java.util.concurrent.ConcurrentHashMap<String, TokenBucket> commandBuckets = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /**
+     * Time of last purge of unused buckets (in nanoseconds).
+     */
+    private static volatile long lastPurge = System.nanoTime();
+
+    /**
+     * Count of connections refused by rate limit.
+     */
+    public static final java.util.concurrent.atomic.AtomicLong rejectedConnections = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * Count of commands refused by rate limit.
+     */
+    public static final java.util.concurrent.atomic.AtomicLong rejectedCommands = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * Token bucket of single address.
+     */
+    public static final class TokenBucket {
+
+        /**
+         * Tokens added per nanosecond.
+         */
+        private final double rate;
+
+        /**
+         * Maximum count of tokens.
+         */
+        private final double capacity;
+
+        /**
+         * Current count of tokens.
+         */
+        private double tokens;
+
+        /**
+         * Time of last refill (in nanoseconds).
+         */
+        private long lastRefill;
+
+        /**
+         * Last take was refused.
+         */
+        private Boolean throttled = false;
+
+        /**
+         * Default constructor.
+         * @param givenRate tokens per second;
+         * @param givenBurst maximum count of tokens;
+         */
+        TokenBucket(Integer givenRate, Integer givenBurst) {
+            rate = givenRate / 1e9;
+            capacity = givenBurst;
+            tokens = givenBurst;
+            lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Take one token if bucket isn't empty.
+         * @return true if token was taken;
+         */
+        synchronized Boolean tryTake() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                throttled = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Mark bucket as throttled.
+         * @return true if bucket wasn't throttled before;
+         */
+        synchronized Boolean markThrottled() {
+            Boolean wasThrottled = throttled;
+            throttled = true;
+            return !wasThrottled;
+        }
+
+        /**
+         * Find out if bucket wasn't used for expire time.
+         * @param now current time (in nanoseconds);
+         * @return true if bucket may be removed;
+         */
+        synchronized Boolean isExpired(long now) {
+            return now - lastRefill > BUCKET_EXPIRE;
+        }
+    }
+
+    /**
+     * Check connection rate of the address and take token for new connection.
+     * @param givenAddress source address of accepted connection;
+     * @return true if connection is allowed;
+     */
+    public static Boolean allowConnection(java.net.InetAddress givenAddress) {
+        if (RibbonServer.NETWORK_CONNECT_RATE == 0) {
+            return true;
+        }
+        String address = givenAddress.getHostAddress();
+        TokenBucket bucket = getBucket(connectBuckets, address, RibbonServer.NETWORK_CONNECT_RATE, RibbonServer.NETWORK_CONNECT_BURST);
+        if (bucket.tryTake()) {
+            return true;
+        }
+        rejectedConnections.incrementAndGet();
+        if (bucket.markThrottled()) {
+            RibbonServer.logAppend(LOG_ID, 2, "перевищено ліміт з'єднань з адреси " + address);
+        }
+        return false;
+    }
+
+    /**
+     * Check command rate of session address and take token for new command.
+     * <p>Sessions of control port aren't limited, so administrator 
+     * may reach the server while clients exhaust limits.</p>
+     * @param givenSession session which executes command;
+     * @return true if command is allowed;
+     */
+    public static Boolean allowCommand(SessionManager.Session givenSession) {
+        if (RibbonServer.NETWORK_COMMAND_RATE == 0 || givenSession.FROM_CONTROL_PORT) {
+            return true;
+        }
+        TokenBucket bucket = givenSession.commandBucket;
+        if (bucket == null) {
+            bucket = getBucket(commandBuckets, givenSession.getPeerAddress(), RibbonServer.NETWORK_COMMAND_RATE, RibbonServer.NETWORK_COMMAND_BURST);
+            givenSession.commandBucket = bucket;
+        }
+        if (bucket.tryTake()) {
+            return true;
+        }
+        rejectedCommands.incrementAndGet();
+        if (bucket.markThrottled()) {
+            RibbonServer.logAppend(LOG_ID, 2, "перевищено ліміт команд з адреси " + givenSession.getPeerAddress());
+        }
+        return false;
+    }
+
+    /**
+     * Get bucket of the address or create new one.
+     * @param buckets buckets by address;
+     * @param address source address;
+     * @param rate tokens per second;
+     * @param burst maximum count of tokens;
+     * @return token bucket;
+     */
+    private static TokenBucket getBucket(java.util.concurrent.ConcurrentHashMap<String, TokenBucket> buckets, String address, Integer rate, Integer burst) {
+        TokenBucket bucket = buckets.get(address);
+        if (bucket == null) {
+            if (buckets.size() >= BUCKET_PURGE_SIZE) {
+                purgeBuckets(buckets);
+            }
+            TokenBucket created = new TokenBucket(rate, burst);
+            bucket = buckets.putIfAbsent(address, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Remove buckets which weren't used for expire time.<br>
+     * Purge is done not more than once a second.
+     * @param buckets buckets by address;
+     */
+    private static void purgeBuckets(java.util.concurrent.ConcurrentHashMap<String, TokenBucket> buckets) {
+        long now = System.nanoTime();
+        if (now - lastPurge < java.util.concurrent.TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastPurge = now;
+        java.util.Iterator<TokenBucket> bucketIter = buckets.values().iterator();
+        while (bucketIter.hasNext()) {
+            if (bucketIter.next().isExpired(now)) {
+                bucketIter.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,661 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * Compact message store which keeps entries in columns (struct of arrays).
+ *
+ * <p>Every entry takes one slot in each column. Slots are ordered by
+ * numeric index, so lookup and tail requests use binary search.
+ * Directories, languages, authors and tags are replaced by int codes
+ * of dictionaries, dates are packed as epoch seconds and headers are
+ * kept in one UTF-8 byte pool. Entry object is created only on request
+ * and shares strings with dictionaries.</p>
+ *
+ * <p>Deleted slots and replaced pool data are dropped by compaction
+ * when they take more than half of the store.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class ColumnarMessageStore extends MessageStore {
+
+    /**
+     * Format of message date.
+     */
+    private static final java.time.format.DateTimeFormatter DATE_FORMAT = java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss dd.MM.yyyy");
+
+    /**
+     * Packed date of entry which date isn't in standard format.
+     */
+    private static final long RAW_DATE = Long.MIN_VALUE;
+
+    /**
+     * Code of absent value.
+     */
+    private static final int NO_CODE = -1;
+
+    /**
+     * Minimal capacity of columns.
+     */
+    private static final int MIN_CAPACITY = 1024;
+
+    /**
+     * Dictionary of strings.
+     */
+    private static final class Dictionary {
+
+        /**
+         * Codes by values.
+         */
+        private final java.util.HashMap<String, Integer> codes = new java.util.HashMap<>();
+
+        /**
+         * Values by codes.
+         */
+        private final java.util.ArrayList<String> values = new java.util.ArrayList<>();
+
+        /**
+         * Get code of value or add value to dictionary.
+         * @param givenValue value to encode (may be null);
+         * @return code of value;
+         */
+        int encode(String givenValue) {
+            if (givenValue == null) {
+                return NO_CODE;
+            }
+            Integer code = codes.get(givenValue);
+            if (code == null) {
+                code = values.size();
+                codes.put(givenValue, code);
+                values.add(givenValue);
+            }
+            return code;
+        }
+
+        /**
+         * Get value by code.
+         * @param givenCode code of value;
+         * @return value or null;
+         */
+        String decode(int givenCode) {
+            return givenCode == NO_CODE ? null : values.get(givenCode);
+        }
+
+        /**
+         * Get count of values.
+         * @return count of values;
+         */
+        int size() {
+            return values.size();
+        }
+
+        /**
+         * Remove all values.
+         */
+        void clear() {
+            codes.clear();
+            values.clear();
+        }
+    }
+
+    /**
+     * Store lock: readers share it, writers hold it exclusively.
+     */
+    private final java.util.concurrent.locks.ReentrantReadWriteLock storeLock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+
+    /**
+     * Dictionary of directory names.
+     */
+    private final Dictionary dirDictionary = new Dictionary();
+
+    /**
+     * Dictionary of languages.
+     */
+    private final Dictionary langDictionary = new Dictionary();
+
+    /**
+     * Dictionary of user names (authors and original authors).
+     */
+    private final Dictionary authorDictionary = new Dictionary();
+
+    /**
+     * Dictionary of tags.
+     */
+    private final Dictionary tagDictionary = new Dictionary();
+
+    /**
+     * Count of used slots (including deleted).
+     */
+    private int slotCount = 0;
+
+    /**
+     * Count of live entries.
+     */
+    private volatile int liveCount = 0;
+
+    /**
+     * Deleted slots.
+     */
+    private final java.util.BitSet deleted = new java.util.BitSet();
+
+    /**
+     * Numeric indexes of entries (ascending).
+     */
+    private int[] ids = new int[0];
+
+    /**
+     * Numeric indexes of original messages.
+     */
+    private int[] origIds = new int[0];
+
+    /**
+     * Codes of languages.
+     */
+    private int[] langs = new int[0];
+
+    /**
+     * Codes of authors.
+     */
+    private int[] authors = new int[0];
+
+    /**
+     * Codes of original authors.
+     */
+    private int[] origAuthors = new int[0];
+
+    /**
+     * Dates as epoch seconds.
+     */
+    private long[] dates = new long[0];
+
+    /**
+     * Offsets of directory and tag groups in code pool.
+     */
+    private int[] groups = new int[0];
+
+    /**
+     * Offsets of headers in header pool.
+     */
+    private int[] headerStarts = new int[0];
+
+    /**
+     * Lengths of headers in bytes (-1 for absent header).
+     */
+    private int[] headerLengths = new int[0];
+
+    /**
+     * Properties of entries (null if entry has no properties).
+     */
+    private MessageClasses.MessageProperty[][] properties = new MessageClasses.MessageProperty[0][];
+
+    /**
+     * Dates which are not in standard format by numeric index.
+     */
+    private final java.util.HashMap<Integer, String> rawDates = new java.util.HashMap<>();
+
+    /**
+     * Pool of directory and tag codes: <code>dirCount, dirs..., tagCount, tags...</code> for each slot.
+     */
+    private int[] codePool = new int[MIN_CAPACITY];
+
+    /**
+     * Used length of code pool.
+     */
+    private int codePoolSize = 0;
+
+    /**
+     * Length of unused data in code pool.
+     */
+    private int codeGarbage = 0;
+
+    /**
+     * Pool of headers in UTF-8.
+     */
+    private byte[] headerPool = new byte[MIN_CAPACITY];
+
+    /**
+     * Used length of header pool.
+     */
+    private int headerPoolSize = 0;
+
+    /**
+     * Length of unused data in header pool.
+     */
+    private int headerGarbage = 0;
+
+    @Override
+    public void put(MessageClasses.MessageEntry givenEntry) {
+        storeLock.writeLock().lock();
+        try {
+            int slot = findSlot(givenEntry.ID);
+            if (slot >= 0) {
+                if (deleted.get(slot)) {
+                    deleted.clear(slot);
+                    liveCount++;
+                } else {
+                    dropSlotData(slot);
+                }
+            } else {
+                slot = -(slot + 1);
+                insertSlot(slot);
+                liveCount++;
+            }
+            writeSlot(slot, givenEntry);
+            compactIfNeeded();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public MessageClasses.MessageEntry get(int givenId) {
+        storeLock.readLock().lock();
+        try {
+            int slot = findSlot(givenId);
+            if (slot < 0 || deleted.get(slot)) {
+                return null;
+            }
+            return readSlot(slot);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Boolean remove(int givenId) {
+        storeLock.writeLock().lock();
+        try {
+            int slot = findSlot(givenId);
+            if (slot < 0 || deleted.get(slot)) {
+                return false;
+            }
+            dropSlotData(slot);
+            deleted.set(slot);
+            liveCount--;
+            compactIfNeeded();
+            return true;
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public java.util.ArrayList<MessageClasses.MessageEntry> getPage(int afterId, int limit) {
+        storeLock.readLock().lock();
+        try {
+            int slot = findSlot(afterId);
+            slot = slot >= 0 ? slot + 1 : -(slot + 1);
+            java.util.ArrayList<MessageClasses.MessageEntry> page = new java.util.ArrayList<>(Math.min(limit, Math.min(slotCount - slot, 1024)));
+            for (; slot < slotCount && page.size() < limit; slot++) {
+                if (!deleted.get(slot)) {
+                    page.add(readSlot(slot));
+                }
+            }
+            return page;
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    @Override
+    public void clear() {
+        storeLock.writeLock().lock();
+        try {
+            dirDictionary.clear();
+            langDictionary.clear();
+            authorDictionary.clear();
+            tagDictionary.clear();
+            rawDates.clear();
+            deleted.clear();
+            slotCount = 0;
+            liveCount = 0;
+            resize(0);
+            codePool = new int[MIN_CAPACITY];
+            codePoolSize = 0;
+            codeGarbage = 0;
+            headerPool = new byte[MIN_CAPACITY];
+            headerPoolSize = 0;
+            headerGarbage = 0;
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "columnar";
+    }
+
+    /**
+     * Get count of values in dictionaries.
+     * @return sizes of directory, language, author and tag dictionaries;
+     */
+    public int[] getDictionarySizes() {
+        storeLock.readLock().lock();
+        try {
+            return new int[] {dirDictionary.size(), langDictionary.size(), authorDictionary.size(), tagDictionary.size()};
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find slot of entry by binary search.
+     * @param givenId numeric index of message;
+     * @return slot or <code>-(insertion point) - 1</code> if index is absent;
+     */
+    private int findSlot(int givenId) {
+        if (slotCount == 0 || givenId < ids[0]) {
+            return -1;
+        }
+        if (ids[slotCount - 1] < givenId) {
+            return -(slotCount + 1);
+        }
+        //Indexes are unique and ascending, so slot is at most the distance from the first index
+        //and at least that distance minus count of gaps in numbering
+        int distance = givenId - ids[0];
+        int gaps = ids[slotCount - 1] - ids[0] - (slotCount - 1);
+        int lowSlot = Math.max(0, distance - gaps);
+        int highSlot = Math.min(slotCount - 1, distance);
+        return java.util.Arrays.binarySearch(ids, lowSlot, highSlot + 1, givenId);
+    }
+
+    /**
+     * Create empty slot at given position and shift following slots.
+     * @param slot position of new slot;
+     */
+    private void insertSlot(int slot) {
+        if (slotCount == ids.length) {
+            resize(Math.max(MIN_CAPACITY, slotCount + (slotCount >> 1)));
+        }
+        if (slot < slotCount) {
+            int tailLength = slotCount - slot;
+            System.arraycopy(ids, slot, ids, slot + 1, tailLength);
+            System.arraycopy(origIds, slot, origIds, slot + 1, tailLength);
+            System.arraycopy(langs, slot, langs, slot + 1, tailLength);
+            System.arraycopy(authors, slot, authors, slot + 1, tailLength);
+            System.arraycopy(origAuthors, slot, origAuthors, slot + 1, tailLength);
+            System.arraycopy(dates, slot, dates, slot + 1, tailLength);
+            System.arraycopy(groups, slot, groups, slot + 1, tailLength);
+            System.arraycopy(headerStarts, slot, headerStarts, slot + 1, tailLength);
+            System.arraycopy(headerLengths, slot, headerLengths, slot + 1, tailLength);
+            System.arraycopy(properties, slot, properties, slot + 1, tailLength);
+            for (int currSlot = slotCount; currSlot > slot; currSlot--) {
+                deleted.set(currSlot, deleted.get(currSlot - 1));
+            }
+            deleted.clear(slot);
+        }
+        slotCount++;
+    }
+
+    /**
+     * Change capacity of columns.
+     * @param capacity new capacity;
+     */
+    private void resize(int capacity) {
+        ids = java.util.Arrays.copyOf(ids, capacity);
+        origIds = java.util.Arrays.copyOf(origIds, capacity);
+        langs = java.util.Arrays.copyOf(langs, capacity);
+        authors = java.util.Arrays.copyOf(authors, capacity);
+        origAuthors = java.util.Arrays.copyOf(origAuthors, capacity);
+        dates = java.util.Arrays.copyOf(dates, capacity);
+        groups = java.util.Arrays.copyOf(groups, capacity);
+        headerStarts = java.util.Arrays.copyOf(headerStarts, capacity);
+        headerLengths = java.util.Arrays.copyOf(headerLengths, capacity);
+        properties = java.util.Arrays.copyOf(properties, capacity);
+    }
+
+    /**
+     * Encode entry into slot.
+     * @param slot slot to write;
+     * @param givenEntry entry to encode;
+     */
+    private void writeSlot(int slot, MessageClasses.MessageEntry givenEntry) {
+        ids[slot] = givenEntry.ID;
+        origIds[slot] = givenEntry.ORIG_ID;
+        langs[slot] = langDictionary.encode(givenEntry.LANG);
+        authors[slot] = authorDictionary.encode(givenEntry.AUTHOR);
+        origAuthors[slot] = authorDictionary.encode(givenEntry.ORIG_AUTHOR);
+        dates[slot] = encodeDate(givenEntry.ID, givenEntry.DATE);
+        groups[slot] = codePoolSize;
+        appendGroup(givenEntry.DIRS, dirDictionary);
+        appendGroup(givenEntry.TAGS, tagDictionary);
+        if (givenEntry.HEADER == null) {
+            headerStarts[slot] = 0;
+            headerLengths[slot] = -1;
+        } else {
+            byte[] headerBytes = givenEntry.HEADER.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            if (headerPoolSize + headerBytes.length > headerPool.length) {
+                headerPool = java.util.Arrays.copyOf(headerPool, Math.max(headerPoolSize + headerBytes.length, headerPool.length + (headerPool.length >> 1)));
+            }
+            System.arraycopy(headerBytes, 0, headerPool, headerPoolSize, headerBytes.length);
+            headerStarts[slot] = headerPoolSize;
+            headerLengths[slot] = headerBytes.length;
+            headerPoolSize += headerBytes.length;
+        }
+        if (givenEntry.PROPERTIES == null || givenEntry.PROPERTIES.isEmpty()) {
+            properties[slot] = null;
+        } else {
+            properties[slot] = givenEntry.PROPERTIES.toArray(new MessageClasses.MessageProperty[givenEntry.PROPERTIES.size()]);
+        }
+    }
+
+    /**
+     * Create entry object from slot.
+     * @param slot slot to read;
+     * @return new entry object;
+     */
+    private MessageClasses.MessageEntry readSlot(int slot) {
+        MessageClasses.MessageEntry readedEntry = new MessageClasses.MessageEntry();
+        readedEntry.ID = ids[slot];
+        readedEntry.ORIG_ID = origIds[slot];
+        readedEntry.LANG = langDictionary.decode(langs[slot]);
+        readedEntry.AUTHOR = authorDictionary.decode(authors[slot]);
+        readedEntry.ORIG_AUTHOR = authorDictionary.decode(origAuthors[slot]);
+        readedEntry.DATE = decodeDate(ids[slot], dates[slot]);
+        int groupOffset = groups[slot];
+        readedEntry.DIRS = readGroup(groupOffset, dirDictionary);
+        readedEntry.TAGS = readGroup(groupOffset + groupLength(groupOffset), tagDictionary);
+        if (headerLengths[slot] >= 0) {
+            readedEntry.HEADER = new String(headerPool, headerStarts[slot], headerLengths[slot], java.nio.charset.StandardCharsets.UTF_8);
+        }
+        if (properties[slot] != null) {
+            readedEntry.PROPERTIES.addAll(java.util.Arrays.asList(properties[slot]));
+        }
+        return readedEntry;
+    }
+
+    /**
+     * Mark pool data of slot as unused.
+     * @param slot slot which data is replaced or deleted;
+     */
+    private void dropSlotData(int slot) {
+        int groupOffset = groups[slot];
+        int dirsLength = groupLength(groupOffset);
+        codeGarbage += dirsLength + groupLength(groupOffset + dirsLength);
+        headerGarbage += Math.max(headerLengths[slot], 0);
+        properties[slot] = null;
+        rawDates.remove(ids[slot]);
+    }
+
+    /**
+     * Append group of strings to code pool.
+     * @param givenGroup group to append (may be null);
+     * @param givenDictionary dictionary of group;
+     */
+    private void appendGroup(String[] givenGroup, Dictionary givenDictionary) {
+        int groupSize = givenGroup == null ? 0 : givenGroup.length;
+        if (codePoolSize + groupSize + 1 > codePool.length) {
+            codePool = java.util.Arrays.copyOf(codePool, Math.max(codePoolSize + groupSize + 1, codePool.length + (codePool.length >> 1)));
+        }
+        codePool[codePoolSize++] = givenGroup == null ? -1 : groupSize;
+        for (int position = 0; position < groupSize; position++) {
+            codePool[codePoolSize++] = givenDictionary.encode(givenGroup[position]);
+        }
+    }
+
+    /**
+     * Get length of group in code pool.
+     * @param groupOffset offset of group;
+     * @return count of pool cells used by group;
+     */
+    private int groupLength(int groupOffset) {
+        return Math.max(codePool[groupOffset], 0) + 1;
+    }
+
+    /**
+     * Read group of strings from code pool.
+     * @param groupOffset offset of group;
+     * @param givenDictionary dictionary of group;
+     * @return array of strings or null;
+     */
+    private String[] readGroup(int groupOffset, Dictionary givenDictionary) {
+        int groupSize = codePool[groupOffset];
+        if (groupSize < 0) {
+            return null;
+        }
+        String[] readedGroup = new String[groupSize];
+        for (int position = 0; position < groupSize; position++) {
+            readedGroup[position] = givenDictionary.decode(codePool[groupOffset + 1 + position]);
+        }
+        return readedGroup;
+    }
+
+    /**
+     * Pack date as epoch seconds.
+     * @param givenId numeric index of message;
+     * @param givenDate date in message format;
+     * @return epoch seconds or {@link #RAW_DATE} if date is kept as is;
+     */
+    private long encodeDate(int givenId, String givenDate) {
+        if (givenDate != null) {
+            try {
+                java.time.LocalDateTime parsedDate = java.time.LocalDateTime.parse(givenDate, DATE_FORMAT);
+                if (parsedDate.getYear() >= 0 && parsedDate.getYear() <= 9999 && DATE_FORMAT.format(parsedDate).equals(givenDate)) {
+                    return parsedDate.toEpochSecond(java.time.ZoneOffset.UTC);
+                }
+            } catch (java.time.format.DateTimeParseException ex) {
+                //Date will be kept as is
+            }
+        }
+        rawDates.put(givenId, givenDate);
+        return RAW_DATE;
+    }
+
+    /**
+     * Unpack date.
+     * @param givenId numeric index of message;
+     * @param packedDate epoch seconds or {@link #RAW_DATE};
+     * @return date in message format;
+     */
+    private String decodeDate(int givenId, long packedDate) {
+        if (packedDate == RAW_DATE) {
+            return rawDates.get(givenId);
+        }
+        java.time.LocalDateTime unpackedDate = java.time.LocalDateTime.ofEpochSecond(packedDate, 0, java.time.ZoneOffset.UTC);
+        //Formatter is slow for every entry of the page, so date is rendered by hand
+        char[] dateChars = new char[19];
+        putDigits(dateChars, 0, unpackedDate.getHour(), 2);
+        dateChars[2] = ':';
+        putDigits(dateChars, 3, unpackedDate.getMinute(), 2);
+        dateChars[5] = ':';
+        putDigits(dateChars, 6, unpackedDate.getSecond(), 2);
+        dateChars[8] = ' ';
+        putDigits(dateChars, 9, unpackedDate.getDayOfMonth(), 2);
+        dateChars[11] = '.';
+        putDigits(dateChars, 12, unpackedDate.getMonthValue(), 2);
+        dateChars[14] = '.';
+        putDigits(dateChars, 15, unpackedDate.getYear(), 4);
+        return new String(dateChars);
+    }
+    
+    /**
+     * Write number with leading zeros.
+     * @param givenChars target array;
+     * @param offset position of first digit;
+     * @param givenNumber number to write;
+     * @param width count of digits;
+     */
+    private static void putDigits(char[] givenChars, int offset, int givenNumber, int width) {
+        for (int position = offset + width - 1; position >= offset; position--) {
+            givenChars[position] = (char) ('0' + givenNumber % 10);
+            givenNumber /= 10;
+        }
+    }
+
+    /**
+     * Drop deleted slots and unused pool data if they take more than half of store.
+     */
+    private void compactIfNeeded() {
+        Boolean slotsWasted = slotCount >= MIN_CAPACITY && (slotCount - liveCount) * 2 > slotCount;
+        Boolean codesWasted = codePoolSize >= MIN_CAPACITY && codeGarbage * 2 > codePoolSize;
+        Boolean headersWasted = headerPoolSize >= MIN_CAPACITY && headerGarbage * 2 > headerPoolSize;
+        if (!slotsWasted && !codesWasted && !headersWasted) {
+            return;
+        }
+        int[] newCodePool = new int[Math.max(MIN_CAPACITY, codePoolSize - codeGarbage)];
+        byte[] newHeaderPool = new byte[Math.max(MIN_CAPACITY, headerPoolSize - headerGarbage)];
+        int newCodeSize = 0;
+        int newHeaderSize = 0;
+        int newSlot = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (deleted.get(slot)) {
+                continue;
+            }
+            int groupOffset = groups[slot];
+            int groupsLength = groupLength(groupOffset);
+            groupsLength += groupLength(groupOffset + groupsLength);
+            System.arraycopy(codePool, groupOffset, newCodePool, newCodeSize, groupsLength);
+            if (headerLengths[slot] > 0) {
+                System.arraycopy(headerPool, headerStarts[slot], newHeaderPool, newHeaderSize, headerLengths[slot]);
+            }
+            ids[newSlot] = ids[slot];
+            origIds[newSlot] = origIds[slot];
+            langs[newSlot] = langs[slot];
+            authors[newSlot] = authors[slot];
+            origAuthors[newSlot] = origAuthors[slot];
+            dates[newSlot] = dates[slot];
+            groups[newSlot] = newCodeSize;
+            headerStarts[newSlot] = newHeaderSize;
+            headerLengths[newSlot] = headerLengths[slot];
+            properties[newSlot] = properties[slot];
+            newCodeSize += groupsLength;
+            newHeaderSize += Math.max(headerLengths[slot], 0);
+            newSlot++;
+        }
+        java.util.Arrays.fill(properties, newSlot, slotCount, null);
+        deleted.clear();
+        slotCount = newSlot;
+        codePool = newCodePool;
+        codePoolSize = newCodeSize;
+        codeGarbage = 0;
+        headerPool = newHeaderPool;
+        headerPoolSize = newHeaderSize;
+        headerGarbage = 0;
+        if (slotsWasted) {
+            resize(Math.max(MIN_CAPACITY, slotCount + (slotCount >> 1)));
+        }
+    }
+}
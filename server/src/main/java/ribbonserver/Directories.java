@@ -191,10 +191,10 @@ public final class Directories {
     /**
      * Add given index to specified directory
      * @param givenDir directory in which index will be added
-     * @param givenIndex index identifier
+     * @param givenIndex numeric index identifier
      * @since RibbonServer a1
      */
-    public static void addIndexToDir(String givenDir, String givenIndex) {
+    public static void addIndexToDir(String givenDir, int givenIndex) {
         synchronized (dirLock) {
             Directories.rootDir.addIndex("", givenDir, givenIndex);
         }
@@ -203,10 +203,10 @@ public final class Directories {
     /**
      * Remove given index from specified directory
      * @param givenDir directory from which index will be removed
-     * @param givenIndex index indentifier
+     * @param givenIndex numeric index indentifier
      * @since RibbonServer a1
      */
-    public static void removeIndexFromDir(String givenDir, String givenIndex) {
+    public static void removeIndexFromDir(String givenDir, int givenIndex) {
         synchronized (dirLock) {
             Directories.rootDir.removeIndex("", givenDir, givenIndex);
         }
@@ -347,7 +347,7 @@ public abstract class IndexReader {
             @Override
             public void run() {
                 synchronized (BASE_LOCK) {
-                    java.util.ListIterator<MessageClasses.MessageEntry> storeIter = Messenger.messageIndex.listIterator();
+                    java.util.Iterator<MessageClasses.MessageEntry> storeIter = Messenger.messageStore.iterator();
                     StringBuffer contentBuf = new StringBuffer();
                     while (storeIter.hasNext()) {
                         contentBuf.append(storeIter.next().toCsv());
@@ -0,0 +1,142 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * Lock-free histogram of execution time.
+ *
+ * <p>Time is counted in microseconds. Every power of two is split into
+ * 8 buckets, so percentiles are estimated with error below 12.5%.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Count of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 8;
+
+    /**
+     * Bits of sub-bucket index.
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * Count of buckets (covers up to 2^40 microseconds).
+     */
+    private static final int BUCKET_COUNT = (40 - SUB_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * Counters of buckets.
+     */
+    private final java.util.concurrent.atomic.AtomicLongArray buckets = new java.util.concurrent.atomic.AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Sum of recorded values (in microseconds).
+     */
+    private final java.util.concurrent.atomic.LongAdder total = new java.util.concurrent.atomic.LongAdder();
+
+    /**
+     * Maximum recorded value (in microseconds).
+     */
+    private final java.util.concurrent.atomic.LongAccumulator max = new java.util.concurrent.atomic.LongAccumulator(Math::max, 0);
+
+    /**
+     * Record execution time.
+     * @param nanos time in nanoseconds;
+     */
+    public void record(long nanos) {
+        long micros = Math.max(nanos / 1000, 0);
+        buckets.incrementAndGet(getBucket(micros));
+        total.add(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * Get snapshot of histogram in csv form.
+     * @return csv line: mean,p50,p90,p99,max (time in microseconds);
+     */
+    public String toCsv() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long snapshotCount = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            snapshot[index] = buckets.get(index);
+            snapshotCount += snapshot[index];
+        }
+        long maxValue = max.get();
+        long mean = snapshotCount == 0 ? 0 : total.sum() / snapshotCount;
+        return mean + "," + getPercentile(snapshot, snapshotCount, 0.5, maxValue) + ","
+                + getPercentile(snapshot, snapshotCount, 0.9, maxValue) + ","
+                + getPercentile(snapshot, snapshotCount, 0.99, maxValue) + "," + maxValue;
+    }
+
+    /**
+     * Estimate percentile by upper bound of bucket.
+     * @param snapshot copy of bucket counters;
+     * @param snapshotCount count of values in snapshot;
+     * @param fraction percentile fraction (0.5 for median);
+     * @param maxValue maximum value;
+     * @return estimated value in microseconds;
+     */
+    private static long getPercentile(long[] snapshot, long snapshotCount, double fraction, long maxValue) {
+        if (snapshotCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(snapshotCount * fraction);
+        long seen = 0;
+        for (int index = 0; index < snapshot.length; index++) {
+            seen += snapshot[index];
+            if (seen >= rank) {
+                return Math.min(getUpperBound(index), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Get bucket index of value.
+     * @param micros value in microseconds;
+     * @return index of bucket;
+     */
+    private static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - SUB_BITS + 1) * SUB_BUCKETS + sub, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get biggest value of bucket.
+     * @param index index of bucket;
+     * @return value in microseconds;
+     */
+    private static long getUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
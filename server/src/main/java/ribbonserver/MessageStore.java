@@ -0,0 +1,205 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * Storage of message entries ordered by numeric index.
+ *
+ * <p>Store may keep entry objects as is or encode them in other form
+ * and return new entry object on every request. So changes of returned
+ * entry should be saved by {@link #put(MessageClasses.MessageEntry)}.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public abstract class MessageStore implements Iterable<MessageClasses.MessageEntry> {
+
+    /**
+     * Create store by name.
+     * @param storeName <code>objects</code> or <code>columnar</code>;
+     * @return new empty store;
+     * @throws IllegalArgumentException if store name is unknown;
+     */
+    public static MessageStore create(String storeName) {
+        switch (storeName) {
+            case "objects":
+                return new ObjectStore();
+            case "columnar":
+                return new ColumnarMessageStore();
+            default:
+                throw new IllegalArgumentException("Невідоме сховище індексу: " + storeName);
+        }
+    }
+
+    /**
+     * Add entry to store or replace entry with the same index.
+     * @param givenEntry entry with assigned index;
+     */
+    public abstract void put(MessageClasses.MessageEntry givenEntry);
+
+    /**
+     * Get entry by numeric index.
+     * @param givenId numeric index of message;
+     * @return entry or null if message is absent;
+     */
+    public abstract MessageClasses.MessageEntry get(int givenId);
+
+    /**
+     * Remove entry by numeric index.
+     * @param givenId numeric index of message;
+     * @return true if entry was removed;
+     */
+    public abstract Boolean remove(int givenId);
+
+    /**
+     * Get page of entries which follow specified index.
+     * @param afterId numeric message index (exclusive), 0 for beginning of base;
+     * @param limit maximum count of entries in page;
+     * @return list of entries ordered by index;
+     */
+    public abstract java.util.ArrayList<MessageClasses.MessageEntry> getPage(int afterId, int limit);
+
+    /**
+     * Get count of entries in store.
+     * @return count of entries;
+     */
+    public abstract int size();
+
+    /**
+     * Remove all entries from store.
+     */
+    public abstract void clear();
+
+    /**
+     * Get name of store for log and statistics.
+     * @return name of store;
+     */
+    public abstract String getName();
+
+    /**
+     * Iterate over all entries in index order.
+     * <p>Iterator doesn't block writers and may miss
+     * changes which were made during iteration.</p>
+     * @return iterator of entries;
+     */
+    @Override
+    public java.util.Iterator<MessageClasses.MessageEntry> iterator() {
+        return new java.util.Iterator<MessageClasses.MessageEntry>() {
+
+            /**
+             * Current page of entries.
+             */
+            private java.util.ArrayList<MessageClasses.MessageEntry> page = getPage(0, 1024);
+
+            /**
+             * Position in current page.
+             */
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (page.isEmpty()) {
+                    return false;
+                }
+                page = getPage(page.get(page.size() - 1).ID, 1024);
+                position = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public MessageClasses.MessageEntry next() {
+                if (!hasNext()) {
+                    throw new java.util.NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+    }
+
+    /**
+     * Store which keeps entry objects in maps.
+     * <p>Returned entries are the same objects which were added,
+     * so changes of them are visible without saving.</p>
+     */
+    public static final class ObjectStore extends MessageStore {
+
+        /**
+         * Entries ordered by numeric index.
+         */
+        private final java.util.concurrent.ConcurrentSkipListMap<Integer, MessageClasses.MessageEntry> messageIndex = new java.util.concurrent.ConcurrentSkipListMap<>();
+
+        /**
+         * Lookup of entries by numeric index.
+         */
+        private final java.util.concurrent.ConcurrentHashMap<Integer, MessageClasses.MessageEntry> messageLookup = new java.util.concurrent.ConcurrentHashMap<>();
+
+        @Override
+        public void put(MessageClasses.MessageEntry givenEntry) {
+            //Same boxed key is shared by both maps
+            Integer numericIndex = givenEntry.ID;
+            messageIndex.put(numericIndex, givenEntry);
+            messageLookup.put(numericIndex, givenEntry);
+        }
+
+        @Override
+        public MessageClasses.MessageEntry get(int givenId) {
+            return messageLookup.get(givenId);
+        }
+
+        @Override
+        public Boolean remove(int givenId) {
+            messageLookup.remove(givenId);
+            return messageIndex.remove(givenId) != null;
+        }
+
+        @Override
+        public java.util.ArrayList<MessageClasses.MessageEntry> getPage(int afterId, int limit) {
+            java.util.ArrayList<MessageClasses.MessageEntry> page = new java.util.ArrayList<>(Math.min(limit, 1024));
+            java.util.Iterator<MessageClasses.MessageEntry> pageIter = messageIndex.tailMap(afterId, false).values().iterator();
+            while (page.size() < limit && pageIter.hasNext()) {
+                page.add(pageIter.next());
+            }
+            return page;
+        }
+
+        @Override
+        public int size() {
+            return messageIndex.size();
+        }
+
+        @Override
+        public void clear() {
+            messageIndex.clear();
+            messageLookup.clear();
+        }
+
+        @Override
+        public String getName() {
+            return "objects";
+        }
+
+        @Override
+        public java.util.Iterator<MessageClasses.MessageEntry> iterator() {
+            return messageIndex.values().iterator();
+        }
+    }
+}
@@ -29,16 +29,16 @@ public final class Messenger {
     private static String LOG_ID = "ПОВІДОМЛЕННЯ";
     
     /**
-     * Storage of message entries.
+     * Storage of message entries ordered by numeric index.
      * @since RibbonServer a1
      */
-    public static java.util.ArrayList<MessageClasses.MessageEntry> messageIndex;
+    public static MessageStore messageStore = new MessageStore.ObjectStore();
     
     /**
-     * Storage of tag etries.
+     * Storage of tag entries: posting lists of message indexes by tag name.
      * @since RibbonServer a1
      */
-    public static java.util.ArrayList<MessageClasses.TagEntry> tagIndex;
+    public static final java.util.LinkedHashMap<String, Generic.PostingList> tagIndex = new java.util.LinkedHashMap<>();
     
     /**
      * Index for new message.
@@ -63,44 +63,29 @@ public final class Messenger {
      * @since RibbonServer a2
      */
     public static void init() {
-        messageIndex = IndexReader.readBaseIndex();
-        java.util.ListIterator<MessageClasses.MessageEntry> messageIter = messageIndex.listIterator();
-        tagIndex = new java.util.ArrayList<>();
+        java.util.ListIterator<MessageClasses.MessageEntry> messageIter = IndexReader.readBaseIndex().listIterator();
+        synchronized (tagLock) {
+            tagIndex.clear();
+        }
+        messageStore = MessageStore.create(RibbonServer.OPT_INDEX_STORE);
         while (messageIter.hasNext()) {
             MessageClasses.MessageEntry currEntry = messageIter.next();
-            if (currEntry.INDEX != null) {
-                if (Integer.parseInt(currEntry.INDEX) > newIndex) {
-                    newIndex = Integer.parseInt(currEntry.INDEX);
+            if (currEntry.ID > 0) {
+                Integer currIndex = currEntry.ID;
+                if (currIndex > newIndex) {
+                    newIndex = currIndex;
                 }
+                messageStore.put(currEntry);
             } else {
                 continue;
             }
             String[] currDirs = currEntry.DIRS;
             for (Integer dirIndex = 0; dirIndex < currDirs.length; dirIndex++) {
-                Directories.addIndexToDir(currDirs[dirIndex], currEntry.INDEX);
+                Directories.addIndexToDir(currDirs[dirIndex], currEntry.ID);
             }
             addToTagIndex(currEntry);
         }
-        RibbonServer.logAppend(LOG_ID, 3, "база повідомлень завантажена (" + messageIndex.size() + ")");
-    }
-    
-    /**
-     * Find out if there is tag with given name
-     * @param tagName name of the tag
-     * @return tagEntry or null
-     * @since RibbonServer a1
-     */
-    private static MessageClasses.TagEntry isTagExist(String tagName) {
-        synchronized (tagLock) {
-            java.util.ListIterator<MessageClasses.TagEntry> tagIter = Messenger.tagIndex.listIterator();
-            while (tagIter.hasNext()) {
-                MessageClasses.TagEntry currTag = tagIter.next();
-                if (currTag.NAME.equals(tagName)) {
-                    return currTag;
-                }
-            }
-            return null;
-        }
+        RibbonServer.logAppend(LOG_ID, 3, "база повідомлень завантажена (" + messageStore.size() + ", сховище " + messageStore.getName() + ")");
     }
     
     /**
@@ -109,29 +94,47 @@ public final class Messenger {
      * @since RibbonServer a2
      */
     public static void addToTagIndex(MessageClasses.MessageEntry givenEntry) {
+        int numericIndex = givenEntry.ID;
         synchronized (tagLock) {
             for (String currTag : givenEntry.TAGS) {
-                MessageClasses.TagEntry namedTag = Messenger.isTagExist(currTag);
+                Generic.PostingList namedTag = Messenger.tagIndex.get(currTag);
                 if (namedTag == null) {
-                    namedTag = new MessageClasses.TagEntry(currTag);
-                    namedTag.INDEXES.add(givenEntry.INDEX);
-                    Messenger.tagIndex.add(namedTag);
-                } else {
-                    namedTag.INDEXES.add(givenEntry.INDEX);
+                    namedTag = new Generic.PostingList();
+                    Messenger.tagIndex.put(currTag, namedTag);
                 }
+                namedTag.add(numericIndex);
             }
         }
     }
     
     /**
-     * Modify tag index (may create or delete tags).
+     * Modify tag index (may create or delete tags).<br>
+     * Only tags which differ in old and new entry are touched.
      * @param oldEntry message entry with tags to modify;
      * @param newEntry message entry with new tags;
      * @since RibbonServer a2
      */
     public static void modTagIndex(MessageClasses.MessageEntry oldEntry, MessageClasses.MessageEntry newEntry) {
-        removeTagIndex(oldEntry);
-        addToTagIndex(newEntry);
+        int numericIndex = oldEntry.ID;
+        java.util.HashSet<String> oldTags = new java.util.HashSet<>(java.util.Arrays.asList(oldEntry.TAGS));
+        java.util.HashSet<String> newTags = new java.util.HashSet<>(java.util.Arrays.asList(newEntry.TAGS));
+        synchronized (tagLock) {
+            for (String currTag : oldTags) {
+                if (!newTags.contains(currTag)) {
+                    removeFromTag(currTag, numericIndex);
+                }
+            }
+            for (String currTag : newTags) {
+                if (!oldTags.contains(currTag)) {
+                    Generic.PostingList namedTag = Messenger.tagIndex.get(currTag);
+                    if (namedTag == null) {
+                        namedTag = new Generic.PostingList();
+                        Messenger.tagIndex.put(currTag, namedTag);
+                    }
+                    namedTag.add(numericIndex);
+                }
+            }
+        }
     }
     
     /**
@@ -140,27 +143,67 @@ public final class Messenger {
      * @since RibbonServer a2
      */
     public static void removeTagIndex(MessageClasses.MessageEntry givenEntry) {
+        int numericIndex = givenEntry.ID;
         synchronized (tagLock) {
             for (String currTag : givenEntry.TAGS) {
-                MessageClasses.TagEntry namedTag = Messenger.isTagExist(currTag);
-                if (namedTag != null) {
-                    namedTag.INDEXES.remove(givenEntry.INDEX);
+                removeFromTag(currTag, numericIndex);
+            }
+        }
+    }
+    
+    /**
+     * Remove index from tag and delete tag if it has no more messages.<br>
+     * Caller should hold tag lock.
+     * @param tagName name of the tag;
+     * @param numericIndex index of message;
+     * @since RibbonServer a3
+     */
+    private static void removeFromTag(String tagName, int numericIndex) {
+        Generic.PostingList namedTag = Messenger.tagIndex.get(tagName);
+        if (namedTag != null) {
+            namedTag.remove(numericIndex);
+            if (namedTag.size() == 0) {
+                Messenger.tagIndex.remove(tagName);
+            }
+        }
+    }
+    
+    /**
+     * Get message entries which have all given tags.
+     * @param givenTags names of tags;
+     * @return list of message entries ordered by index;
+     * @since RibbonServer a3
+     */
+    public static java.util.ArrayList<MessageClasses.MessageEntry> getEntriesByTags(String[] givenTags) {
+        int[] matchedIndexes;
+        synchronized (tagLock) {
+            java.util.ArrayList<Generic.PostingList> postings = new java.util.ArrayList<>(givenTags.length);
+            for (String currTag : givenTags) {
+                Generic.PostingList namedTag = Messenger.tagIndex.get(currTag);
+                if (namedTag == null) {
+                    return new java.util.ArrayList<>();
                 }
+                postings.add(namedTag);
+            }
+            matchedIndexes = Generic.PostingList.intersect(postings);
+        }
+        java.util.ArrayList<MessageClasses.MessageEntry> matchedEntries = new java.util.ArrayList<>(matchedIndexes.length);
+        for (int currIndex : matchedIndexes) {
+            MessageClasses.MessageEntry currEntry = Messenger.messageStore.get(currIndex);
+            if (currEntry != null) {
+                matchedEntries.add(currEntry);
             }
         }
+        return matchedEntries;
     }
     
     /**
      * Get index for new message
-     * @return string expresion of new index
+     * @return numeric expresion of new index
      * @since RibbonServer a1
      */
-    private static synchronized String getNewIndex() {
-        String newIndexStr = String.valueOf(++newIndex);
-        while (newIndexStr.length() < 10) {
-            newIndexStr = "0" + newIndexStr;
-        }
-        return newIndexStr;
+    private static synchronized int getNewIndex() {
+        return ++newIndex;
     }
     
     /**
@@ -169,10 +212,11 @@ public final class Messenger {
      * @since RibbonServer a1
      */
     public static void addMessageToIndex(MessageClasses.Message givenMessage) {
-        givenMessage.INDEX = Messenger.getNewIndex();
         givenMessage.DATE = RibbonServer.getCurrentDate();
+        //Index is taken under lock, so entries appear in index order and readers of the tail don't skip them
         synchronized (messageLock) {
-            Messenger.messageIndex.add(givenMessage.returnEntry());
+            givenMessage.ID = Messenger.getNewIndex();
+            Messenger.messageStore.put(givenMessage.returnEntry());
         }
         addToTagIndex(givenMessage);
     }
@@ -185,32 +229,27 @@ public final class Messenger {
     public static String PROC_GET_TAGS() {
         synchronized (tagLock) {
             StringBuffer getBuf = new StringBuffer();
-            java.util.ListIterator<MessageClasses.TagEntry> tagIter = Messenger.tagIndex.listIterator();
-            while (tagIter.hasNext()) {
-                getBuf.append("RIBBON_UCTL_LOAD_TAG:").append(tagIter.next().toCsv()).append("\n");
+            for (java.util.Map.Entry<String, Generic.PostingList> currTag : Messenger.tagIndex.entrySet()) {
+                int[] tagIndexes = currTag.getValue().toArray();
+                String[] renderedIndexes = new String[tagIndexes.length];
+                for (Integer position = 0; position < tagIndexes.length; position++) {
+                    renderedIndexes[position] = MessageClasses.MessageEntry.formatIndex(tagIndexes[position]);
+                }
+                getBuf.append("RIBBON_UCTL_LOAD_TAG:").append(currTag.getKey()).append(",").append(Generic.CsvFormat.renderGroup(renderedIndexes)).append("\n");
             }
             return getBuf.append("END:").toString();
         }
     }
     
     /**
-     * Return messages beginning form specified index.
-     * @return messages on csv form;
-     * @since RibbonServer a1
+     * Get page of message entries which were released after specified index.
+     * @param afterIndex numeric message index (exclusive), 0 for beginning of base;
+     * @param limit maximum count of entries in page;
+     * @return list of message entries;
+     * @since RibbonServer a3
      */
-    public static String PROC_LOAD_BASE_FROM_INDEX(String givenIndex) {
-        StringBuffer getBuf = new StringBuffer();
-        if (Integer.parseInt(givenIndex) > Messenger.newIndex) {
-            return "END:";
-        } else {
-            synchronized (messageLock) {
-                java.util.ListIterator<MessageClasses.MessageEntry> messageIter = Messenger.messageIndex.listIterator(Integer.parseInt(givenIndex));
-                while (messageIter.hasNext()) {
-                    getBuf.append("RIBBON_UCTL_LOAD_INDEX:").append(messageIter.next().toCsv()).append("\n");
-                }
-            }
-        }
-        return getBuf.append("END:").toString();
+    public static java.util.ArrayList<MessageClasses.MessageEntry> getEntriesPage(Integer afterIndex, Integer limit) {
+        return Messenger.messageStore.getPage(afterIndex, limit);
     }
     
     /**
@@ -220,16 +259,58 @@ public final class Messenger {
      * @since RibbonServer a1
      */
     public static MessageClasses.MessageEntry getMessageEntryByIndex(String givenIndex) {
-        synchronized (tagLock) {
-            java.util.ListIterator<MessageClasses.MessageEntry> messageIter = Messenger.messageIndex.listIterator();
-            while (messageIter.hasNext()) {
-                MessageClasses.MessageEntry currEntry = messageIter.next();
-                if (currEntry.INDEX.equals(givenIndex)) {
-                    return currEntry;
-                }
+        try {
+            return Messenger.messageStore.get(MessageClasses.MessageEntry.parseIndex(givenIndex));
+        } catch (NumberFormatException | NullPointerException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Get message entry object by numeric index or null if message is absent.
+     * @param givenId numeric index of message for search
+     * @return message entry object or null
+     * @since RibbonServer a3
+     */
+    public static MessageClasses.MessageEntry getMessageEntryById(int givenId) {
+        return Messenger.messageStore.get(givenId);
+    }
+    
+    /**
+     * Change stored message entry and save it back to the store.
+     * <p>Entry objects may be copies of stored entries, so every change 
+     * of entry should be made by this method. Updater receives current 
+     * stored entry and runs under index lock, so it shouldn't block.</p>
+     * @param givenId numeric index of message
+     * @param updater changes of entry
+     * @return changed entry or null if message is absent
+     * @since RibbonServer a3
+     */
+    public static MessageClasses.MessageEntry updateMessageEntry(int givenId, java.util.function.Consumer<MessageClasses.MessageEntry> updater) {
+        synchronized (messageLock) {
+            MessageClasses.MessageEntry storedEntry = Messenger.messageStore.get(givenId);
+            if (storedEntry != null) {
+                updater.accept(storedEntry);
+                Messenger.messageStore.put(storedEntry);
             }
+            return storedEntry;
         }
-        return null;
+    }
+    
+    /**
+     * Add properties to stored message entry (other fields of stored entry are kept).
+     * @param givenId numeric index of message
+     * @param addedProperties properties to add
+     * @return changed entry or null if message was deleted
+     * @since RibbonServer a3
+     */
+    public static MessageClasses.MessageEntry addMessageProperties(int givenId, final java.util.List<MessageClasses.MessageProperty> addedProperties) {
+        return Messenger.updateMessageEntry(givenId, new java.util.function.Consumer<MessageClasses.MessageEntry>() {
+            @Override
+            public void accept(MessageClasses.MessageEntry storedEntry) {
+                storedEntry.PROPERTIES.addAll(addedProperties);
+            }
+        });
     }
     
     /**
@@ -239,7 +320,7 @@ public final class Messenger {
      */
     public static void deleteMessageEntryFromIndex(MessageClasses.MessageEntry givenEntry) {
         synchronized (messageLock) {
-            Messenger.messageIndex.remove(givenEntry);
+            Messenger.messageStore.remove(givenEntry.ID);
         }
         Messenger.removeTagIndex(givenEntry);
         IndexReader.updateBaseIndex();
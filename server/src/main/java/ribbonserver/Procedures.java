@@ -45,16 +45,19 @@ public class Procedures {
             if (failedIndex != null) {
                 return "RIBBON_ERROR:Помилка доступу до напрямку " + givenMessage.DIRS[failedIndex];
             }
-            if (givenMessage.ORIG_INDEX.equals("-1")) {
+            if (givenMessage.ORIG_ID == -1) {
                 givenMessage.ORIG_AUTHOR = givenMessage.AUTHOR;
             } else {
-                givenMessage.ORIG_AUTHOR = Messenger.getMessageEntryByIndex(givenMessage.ORIG_INDEX).AUTHOR;
+                givenMessage.ORIG_AUTHOR = Messenger.getMessageEntryById(givenMessage.ORIG_ID).AUTHOR;
             }
             Messenger.addMessageToIndex(givenMessage);
             if (RibbonServer.IO_ENABLED && IOControl.dispathcer.checkExport(givenMessage.DIRS)) {
-                IOControl.dispathcer.initExport(givenMessage);
+                //Exporters append properties to own copy, index gets them through SystemWrapper.updateIndex
+                MessageClasses.Message exportedMessage = new MessageClasses.Message(givenMessage, givenMessage.CONTENT);
+                exportedMessage.PROPERTIES = new java.util.ArrayList<>(givenMessage.PROPERTIES);
+                IOControl.dispathcer.initExport(exportedMessage);
             }
-            writeMessage(givenMessage.DIRS, givenMessage.INDEX, givenMessage.CONTENT);
+            writeMessage(givenMessage.DIRS, givenMessage.getIndex(), givenMessage.CONTENT);
             givenMessage.CONTENT = null;
             IndexReader.appendToBaseIndex(givenMessage.returnEntry().toCsv());
             for (Integer dirIndex = 0; dirIndex < givenMessage.DIRS.length; dirIndex++) {
@@ -103,14 +106,26 @@ public class Procedures {
      * Modify message by given template message.
      * @param oldMessage original message to modify;
      * @param newMessage override template message;
+     * @return modified entry or null if message was deleted;
      * @since RibbonServer a2
      */
-    public static synchronized void PROC_MODIFY_MESSAGE(MessageClasses.MessageEntry oldMessage, MessageClasses.Message newMessage) {
-        makeCleanup(oldMessage.DIRS, newMessage.DIRS, oldMessage.INDEX);
-        Messenger.modTagIndex(oldMessage, oldMessage);
-        oldMessage.modifyMessageEntry(newMessage);
-        writeMessage(oldMessage.DIRS, oldMessage.INDEX, newMessage.CONTENT);
+    public static synchronized MessageClasses.MessageEntry PROC_MODIFY_MESSAGE(MessageClasses.MessageEntry oldMessage, final MessageClasses.Message newMessage) {
+        final String[][] storedDirs = new String[1][];
+        MessageClasses.MessageEntry modifiedEntry = Messenger.updateMessageEntry(oldMessage.ID, new java.util.function.Consumer<MessageClasses.MessageEntry>() {
+            @Override
+            public void accept(MessageClasses.MessageEntry storedEntry) {
+                storedDirs[0] = storedEntry.DIRS.clone();
+                Messenger.modTagIndex(storedEntry, newMessage);
+                storedEntry.modifyMessageEntry(newMessage);
+            }
+        });
+        if (modifiedEntry == null) {
+            return null;
+        }
+        makeCleanup(storedDirs[0], newMessage.DIRS, modifiedEntry.getIndex());
+        writeMessage(modifiedEntry.DIRS, modifiedEntry.getIndex(), newMessage.CONTENT);
         IndexReader.updateBaseIndex();
+        return modifiedEntry;
     }
     
     /**
@@ -145,7 +160,7 @@ public class Procedures {
      */
     public static synchronized void PROC_DELETE_MESSAGE(MessageClasses.MessageEntry givenEntry) {
         for (Integer pathIndex = 0; pathIndex < givenEntry.DIRS.length; pathIndex++) {
-            String currPath = Directories.getDirPath(givenEntry.DIRS[pathIndex]) + givenEntry.INDEX;
+            String currPath = Directories.getDirPath(givenEntry.DIRS[pathIndex]) + givenEntry.getIndex();
             try {
                 java.nio.file.Files.delete(new java.io.File(currPath).toPath());
             } catch (java.io.IOException ex) {
@@ -153,7 +168,7 @@ public class Procedures {
             }
         }
         Messenger.deleteMessageEntryFromIndex(givenEntry);
-        RibbonServer.logAppend(LOG_ID, 3, "повідомлення за індексом " + givenEntry.INDEX + " вилучено з системи.");
+        RibbonServer.logAppend(LOG_ID, 3, "повідомлення за індексом " + givenEntry.getIndex() + " вилучено з системи.");
     }
     
     /**
@@ -195,7 +210,7 @@ public class Procedures {
                     "Звіт про помилку", "root", "UA", new String[] {RibbonServer.DEBUG_POST_DIR}, 
                     new String[] {"СТРІЧКА", "ПОМИЛКИ"}, exMesgBuf.toString());
             Procedures.PROC_POST_MESSAGE(exMessage);
-            SessionManager.broadcast("RIBBON_UCTL_LOAD_INDEX:" + exMessage.toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT);
+            SessionManager.broadcast("RIBBON_UCTL_LOAD_INDEX:" + exMessage.toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT, exMessage.DIRS);
         }
     }
 }
@@ -26,7 +26,7 @@ package ribbonserver;
  */
 public class RibbonProtocol {
     
-    private String LOG_ID = "ПРОТОКОЛ";
+    private static String LOG_ID = "ПРОТОКОЛ";
     
     /**
      * Tail of protocol result which should be delivered to all peers;
@@ -40,6 +40,12 @@ public class RibbonProtocol {
      */
     public CONNECTION_TYPES BROADCAST_TYPE;
     
+    /**
+     * Directories of broadcasted message (null to send to all peers of type);
+     * @since RibbonServer a3
+     */
+    public String[] BROADCAST_DIRS;
+    
     /**
      * Remote session flag.
      */
@@ -50,28 +56,215 @@ public class RibbonProtocol {
      * @param upperThread given session thread to link with;
      * @since RibbonServer a1
      */
-    RibbonProtocol(SessionManager.SessionThread upperThread) {
-        InitProtocol();
+    RibbonProtocol(SessionManager.Session upperThread) {
         CURR_SESSION = upperThread;
     }
     
+    /**
+     * Constructor of context for single pipelined command.
+     * @param parentProtocol protocol of the session;
+     * @since RibbonServer a3
+     */
+    private RibbonProtocol(RibbonProtocol parentProtocol) {
+        CURR_SESSION = parentProtocol.CURR_SESSION;
+        CURR_TYPE = parentProtocol.CURR_TYPE;
+        IS_REMOTE = parentProtocol.IS_REMOTE;
+        IS_FRAMED = parentProtocol.IS_FRAMED;
+    }
+    
     /**
      * Link to upper level thread
      * @since RibbonServer a1
      */
-    private SessionManager.SessionThread CURR_SESSION;
+    private SessionManager.Session CURR_SESSION;
     
     /**
      * Protocol revision digit.
      * @since RibbonServer a1
      */
-    private Integer INT_VERSION = 2;
+    private static Integer INT_VERSION = 2;
     
     /**
      * String protocol revision version.
      * @since RibbonServer a1
      */
-    private String STR_VERSION = RibbonServer.RIBBON_MAJOR_VER;
+    private static String STR_VERSION = RibbonServer.RIBBON_MAJOR_VER;
+    
+    /**
+     * String protocol revision version with framed message bodies.
+     * @since RibbonServer a3
+     */
+    public static final String STR_FRAMED_VERSION = RibbonServer.RIBBON_MAJOR_VER + "f";
+    
+    /**
+     * Header prefix of frame.
+     * @since RibbonServer a3
+     */
+    public static final String FRAME_HEADER = "FRAME:";
+    
+    /**
+     * Maximum length of frame payload in bytes.
+     * @since RibbonServer a3
+     */
+    public static final Integer MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    
+    /**
+     * Count of index lines in one chunk of streamed answer.
+     * @since RibbonServer a3
+     */
+    private static final Integer STREAM_CHUNK_SIZE = 256;
+    
+    /**
+     * Count of entries taken from store at once for streamed answer.
+     * @since RibbonServer a3
+     */
+    private static final Integer STREAM_PAGE_SIZE = 1024;
+    
+    /**
+     * Maximum count of entries in one page of <code>RIBBON_LOAD_BASE_PAGE</code>.
+     * @since RibbonServer a3
+     */
+    public static final Integer MAX_PAGE_SIZE = 5000;
+    
+    /**
+     * Maximum count of messages in one <code>RIBBON_GET_MESSAGES</code> request.
+     * @since RibbonServer a3
+     */
+    public static final Integer MAX_MULTI_GET = 1000;
+    
+    /**
+     * Minimal count of messages in request which are readed in parallel.
+     * @since RibbonServer a3
+     */
+    private static final Integer PARALLEL_READ_THRESHOLD = 8;
+    
+    /**
+     * Framed protocol flag: message bodies are transfered as 
+     * <code>FRAME:length</code> header line and raw payload bytes 
+     * instead of lines with <code>END:</code> terminator.
+     * @since RibbonServer a3
+     */
+    public Boolean IS_FRAMED = false;
+    
+    /**
+     * Raw payload which should be sent to peer right after answer.
+     * @since RibbonServer a3
+     */
+    public byte[] FRAME_PAYLOAD;
+    
+    /**
+     * File which should be sent to peer right after answer 
+     * (payload goes from the file to the socket without copy to heap).
+     * @since RibbonServer a3
+     */
+    public java.nio.channels.FileChannel FRAME_FILE;
+    
+    /**
+     * Length of <code>FRAME_FILE</code> payload announced in answer.
+     * @since RibbonServer a3
+     */
+    public Long FRAME_FILE_LENGTH;
+    
+    /**
+     * Output of the session should be compressed right after current answer.
+     * @since RibbonServer a3
+     */
+    public Boolean START_COMPRESSION = false;
+    
+    /**
+     * Prefixes of commands which are followed by message body 
+     * (including <code>_BY_PSEUDO</code> variants).
+     * @since RibbonServer a3
+     */
+    public static final String[] BODY_COMMANDS = new String[] {"RIBBON_POST_MESSAGE", "RIBBON_MODIFY_MESSAGE"};
+    
+    /**
+     * Name of deflate compression method in <code>RIBBON_NCTL_INIT</code>.
+     * @since RibbonServer a3
+     */
+    public static final String COMPRESSION_DEFLATE = "DEFLATE";
+    
+    /**
+     * Prefix of command line with request id.
+     * @since RibbonServer a3
+     */
+    public static final String TAGGED_PREFIX = "RIBBON_TAGGED:";
+    
+    /**
+     * Pipelined mode flag: commands with request id may be executed concurrently.
+     * @since RibbonServer a3
+     */
+    public Boolean IS_PIPELINED = false;
+    
+    /**
+     * Buffer for streamed output of tagged command (null if output goes directly to peer).
+     * @since RibbonServer a3
+     */
+    private StringBuilder OUTPUT_CAPTURE;
+    
+    /**
+     * User name for next command after <code>RIBBON_NCTL_ACCESS_CONTEXT</code> (null if context isn't changed).
+     * @since RibbonServer a3
+     */
+    private String contextUserName;
+    
+    /**
+     * Free slots for pipelined commands of this session.
+     * @since RibbonServer a3
+     */
+    private java.util.concurrent.Semaphore pipelineSlots;
+    
+    /**
+     * Periodic statistics updates of this session (null if disabled).
+     * @since RibbonServer a3
+     */
+    private java.util.concurrent.ScheduledFuture<?> statsStream;
+    
+    /**
+     * Timer of periodic statistics updates.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ScheduledExecutorService statsTimer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-stats-timer");
+            created.setDaemon(true);
+            return created;
+        }
+    });
+    
+    /**
+     * Executor of pipelined commands.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ExecutorService pipelineExecutor = java.util.concurrent.Executors.newFixedThreadPool(RibbonServer.NETWORK_PIPELINE_WORKERS, new java.util.concurrent.ThreadFactory() {
+        
+        private final java.util.concurrent.atomic.AtomicInteger pipelineCounter = new java.util.concurrent.atomic.AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-pipeline-" + pipelineCounter.incrementAndGet());
+            created.setDaemon(true);
+            return created;
+        }
+    });
+    
+    /**
+     * Executor of message file reads for multi-get commands.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ExecutorService readExecutor = java.util.concurrent.Executors.newFixedThreadPool(RibbonServer.OPT_READ_WORKERS, new java.util.concurrent.ThreadFactory() {
+        
+        private final java.util.concurrent.atomic.AtomicInteger readCounter = new java.util.concurrent.atomic.AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-reader-" + readCounter.incrementAndGet());
+            created.setDaemon(true);
+            return created;
+        }
+    });
     
     /**
      * Connection type enumeration.
@@ -107,16 +300,22 @@ public class RibbonProtocol {
     public CONNECTION_TYPES CURR_TYPE = CONNECTION_TYPES.NULL;
     
     /**
-     * ArrayList of commands objects.
+     * Map of commands objects shared by all sessions (key is command name).
      * @since RibbonServer a1
      */
-    private java.util.ArrayList<CommandLet> RIBBON_COMMANDS = new java.util.ArrayList<CommandLet>();
+    private static final java.util.Map<String, CommandLet> RIBBON_COMMANDS;
+    
+    static {
+        java.util.HashMap<String, CommandLet> commandMap = new java.util.HashMap<String, CommandLet>();
+        InitProtocol(commandMap);
+        RIBBON_COMMANDS = java.util.Collections.unmodifiableMap(commandMap);
+    }
     
     /**
      * Command template class.
      * @since RibbonServer a1
      */
-    private class CommandLet {
+    private static abstract class CommandLet {
         
         /**
          * Default constroctor.
@@ -129,6 +328,18 @@ public class RibbonProtocol {
             this.COMM_TYPE = givenType;
         }
         
+        /**
+         * Constructor with read-only flag.
+         * @param givenName name of command;
+         * @param givenType type of connections which may use this command;
+         * @param givenReadOnly command doesn't change system state and doesn't grab socket;
+         * @since RibbonServer a3
+         */
+        CommandLet(String givenName, CONNECTION_TYPES givenType, Boolean givenReadOnly) {
+            this(givenName, givenType);
+            this.READ_ONLY = givenReadOnly;
+        }
+        
         /**
          * Name of command.
          * @since RibbonServer a1
@@ -141,21 +352,123 @@ public class RibbonProtocol {
          */
         public CONNECTION_TYPES COMM_TYPE;
         
+        /**
+         * Command doesn't change system state and doesn't grab socket, 
+         * so it may be executed concurrently in pipelined mode.
+         * @since RibbonServer a3
+         */
+        public Boolean READ_ONLY = false;
+        
+        /**
+         * Count of command invocations since server start.
+         * @since RibbonServer a3
+         */
+        public final java.util.concurrent.atomic.LongAdder CALL_COUNT = new java.util.concurrent.atomic.LongAdder();
+        
+        /**
+         * Count of invocations which ended with error.
+         * @since RibbonServer a3
+         */
+        public final java.util.concurrent.atomic.LongAdder ERROR_COUNT = new java.util.concurrent.atomic.LongAdder();
+        
+        /**
+         * Execution time of invocations.
+         * @since RibbonServer a3
+         */
+        public final LatencyHistogram LATENCY = new LatencyHistogram();
+        
         /**
          * Main command body.
+         * @param context protocol instance of calling session;
          * @param args arguments from application <i>(may be in CSV format)</i>;
          * @return command answer;
          * @since RibbonServer a1
          */
-        public String exec(String args) {return "";};
+        public abstract String exec(RibbonProtocol context, String args);
         
     }
     
+    /**
+     * Single message read of multi-get command.
+     * @since RibbonServer a3
+     */
+    private static class MessageRead implements Runnable {
+        
+        /**
+         * Directory of the message.
+         */
+        public final String DIR;
+        
+        /**
+         * Index of the message.
+         */
+        public final String INDEX;
+        
+        /**
+         * Path to message file.
+         */
+        public java.nio.file.Path PATH;
+        
+        /**
+         * Body of the message.
+         */
+        public byte[] CONTENT;
+        
+        /**
+         * Reason of failure (null if message is readed).
+         */
+        public String ERROR;
+        
+        /**
+         * Default constructor.
+         * @param givenDir directory of the message;
+         * @param givenIndex index of the message;
+         */
+        MessageRead(String givenDir, String givenIndex) {
+            DIR = givenDir;
+            INDEX = givenIndex;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                CONTENT = java.nio.file.Files.readAllBytes(PATH);
+            } catch (java.nio.file.NoSuchFileException ex) {
+                ERROR = "Повідмолення не існує!";
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "помилка зчитування повідомлення " + DIR + ":" + INDEX);
+                ERROR = "Помилка виконання команди!";
+            }
+        }
+        
+        /**
+         * Write header and body of this message to multi-get payload.
+         * @param payload payload of the answer;
+         * @param charset charset of header line;
+         */
+        public void writeTo(java.io.ByteArrayOutputStream payload, java.nio.charset.Charset charset) {
+            if (ERROR == null && payload.size() + CONTENT.length > MAX_FRAME_LENGTH) {
+                ERROR = "Перевищено розмір відповіді!";
+            }
+            byte[] header;
+            if (ERROR != null) {
+                header = ("MESSAGE_ERROR:" + DIR + "," + INDEX + ",{" + ERROR + "}\n").getBytes(charset);
+            } else {
+                header = ("MESSAGE:" + DIR + "," + INDEX + "," + CONTENT.length + "\n").getBytes(charset);
+            }
+            payload.write(header, 0, header.length);
+            if (ERROR == null) {
+                payload.write(CONTENT, 0, CONTENT.length);
+            }
+        }
+    }
+    
     /**
      * Init protocol and load commands.
+     * @param commandMap map to register commands in;
      * @since RibbonServer a1
      */
-    private void InitProtocol() {
+    private static void InitProtocol(final java.util.Map<String, CommandLet> commandMap) {
         
         /** CONNECTION CONTROL COMMANDS [LEVEL_0 SUPPORT] **/
         
@@ -164,21 +477,30 @@ public class RibbonProtocol {
          * Client and others application send this command to register
          * this connection.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_INIT", CONNECTION_TYPES.NULL) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_INIT", CONNECTION_TYPES.NULL) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 String[] parsedArgs = args.split(",");
-                if (CURR_TYPE == CONNECTION_TYPES.NULL) {
-                    if (parsedArgs[1].equals(STR_VERSION)) {
+                if (context.CURR_TYPE == CONNECTION_TYPES.NULL) {
+                    if (parsedArgs[1].equals(STR_VERSION) || parsedArgs[1].equals(STR_FRAMED_VERSION)) {
+                        if (parsedArgs.length > 3 && !parsedArgs[3].equals(COMPRESSION_DEFLATE) && !parsedArgs[3].equals("NONE")) {
+                            return "RIBBON_ERROR:Невідомий метод стиснення!";
+                        }
                         try {
                             if (parsedArgs[0].equals("ANY") || parsedArgs[0].equals("NULL")) {
                                 throw new IllegalArgumentException();
                             }
-                            CURR_TYPE = CONNECTION_TYPES.valueOf(parsedArgs[0]);
+                            if (context.CURR_SESSION.FROM_CONTROL_PORT && CONNECTION_TYPES.valueOf(parsedArgs[0]) != CONNECTION_TYPES.CONTROL) {
+                                return "RIBBON_ERROR:Порт керування приймає лише з'єднання CONTROL!";
+                            }
+                            SessionManager.updateSessionType(context.CURR_SESSION, CONNECTION_TYPES.valueOf(parsedArgs[0]));
                             if (!parsedArgs[2].equals(System.getProperty("file.encoding"))) {
                                 RibbonServer.logAppend(LOG_ID, 2, "мережева сесія вимогає іншої кодової сторінки:" + parsedArgs[2]);
-                                CURR_SESSION.setReaderEncoding(parsedArgs[2]);
+                                context.CURR_SESSION.setReaderEncoding(parsedArgs[2]);
                             }
+                            context.IS_FRAMED = parsedArgs[1].equals(STR_FRAMED_VERSION);
+                            context.CURR_SESSION.setFramedInput(context.IS_FRAMED);
+                            context.START_COMPRESSION = parsedArgs.length > 3 && parsedArgs[3].equals(COMPRESSION_DEFLATE);
                             return "OK:";
                         } catch (IllegalArgumentException ex) {
                             return "RIBBON_ERROR:Невідомий тип з'єднання!";
@@ -192,39 +514,127 @@ public class RibbonProtocol {
             }
         });
         
+        /**
+         * RIBBON_NCTL_CONNECT: commandlet
+         * Combined handshake: init connection and login user or resume 
+         * session by one command. Nothing is changed if any step fails.
+         * Login form: TYPE,VERSION,ENCODING,COMPRESSION,REMOTE,{USER},PASSWORD_HASH
+         * Resume form: TYPE,VERSION,ENCODING,COMPRESSION,REMOTE,SESSION_HASH_ID
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_CONNECT", CONNECTION_TYPES.NULL) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                if (context.CURR_TYPE != CONNECTION_TYPES.NULL) {
+                    return "RIBBON_WARNING:З'єднання вже ініціьовано!";
+                }
+                String[] parsedArgs = Generic.CsvFormat.commonParseLine(args, 7);
+                if (parsedArgs == null || parsedArgs[5] == null) {
+                    return "RIBBON_ERROR:Невірний формат запиту!";
+                }
+                if (!parsedArgs[1].equals(STR_VERSION) && !parsedArgs[1].equals(STR_FRAMED_VERSION)) {
+                    return "RIBBON_ERROR:Невідомий ідентефікатор протокола.";
+                }
+                if (!parsedArgs[3].equals(COMPRESSION_DEFLATE) && !parsedArgs[3].equals("NONE")) {
+                    return "RIBBON_ERROR:Невідомий метод стиснення!";
+                }
+                CONNECTION_TYPES newType;
+                try {
+                    newType = CONNECTION_TYPES.valueOf(parsedArgs[0]);
+                } catch (IllegalArgumentException ex) {
+                    newType = CONNECTION_TYPES.ANY;
+                }
+                if (newType == CONNECTION_TYPES.ANY || newType == CONNECTION_TYPES.NULL) {
+                    return "RIBBON_ERROR:Невідомий тип з'єднання!";
+                }
+                if (context.CURR_SESSION.FROM_CONTROL_PORT && newType != CONNECTION_TYPES.CONTROL) {
+                    return "RIBBON_ERROR:Порт керування приймає лише з'єднання CONTROL!";
+                }
+                try {
+                    if (!java.nio.charset.Charset.isSupported(parsedArgs[2])) {
+                        return "RIBBON_ERROR:Невідома кодова сторінка!";
+                    }
+                } catch (IllegalArgumentException ex) {
+                    return "RIBBON_ERROR:Невідома кодова сторінка!";
+                }
+                Boolean isResume = parsedArgs[6] == null;
+                SessionManager.SessionEntry exicted = null;
+                String userName;
+                if (isResume) {
+                    if (!RibbonServer.ACCESS_ALLOW_SESSIONS) {
+                        return "RIBBON_ERROR:Сесії вимкнено!";
+                    }
+                    exicted = SessionManager.getUserBySessionEntry(parsedArgs[5]);
+                    if (exicted == null) {
+                        return "RIBBON_ERROR:Сесію не знайдено!:";
+                    }
+                    userName = exicted.SESSION_USER_NAME;
+                } else {
+                    userName = parsedArgs[5];
+                    if (!RibbonServer.ACCESS_ALLOW_MULTIPLIE_LOGIN && SessionManager.isAlreadyLogined(userName)) {
+                        return "RIBBON_ERROR:Користувач " + userName + " вже увійшов до системи!";
+                    }
+                    String returned = AccessHandler.PROC_LOGIN_USER(userName, parsedArgs[6]);
+                    if (returned != null) {
+                        return "RIBBON_ERROR:" + returned;
+                    }
+                }
+                if (newType == CONNECTION_TYPES.CONTROL && (!AccessHandler.isUserIsMemberOf(userName, "ADM"))) {
+                    return "RIBBON_ERROR:Користувач " + userName + " не є адміністратором системи.";
+                }
+                Boolean isRemote = "1".equals(parsedArgs[4]);
+                if (isRemote) {
+                    if (!RibbonServer.ACCESS_ALLOW_REMOTE) {
+                        return "RIBBON_ERROR:Видалений режим вимкнено!";
+                    } else if (!AccessHandler.isUserIsMemberOf(userName, RibbonServer.ACCESS_REMOTE_GROUP)) {
+                        return "RIBBON_ERROR:Ця сессія не може використовувати видалений режим!";
+                    }
+                }
+                if (isResume) {
+                    String returned = AccessHandler.PROC_RESUME_USER(exicted);
+                    if (returned != null) {
+                        return "RIBBON_ERROR:" + returned;
+                    }
+                }
+                SessionManager.updateSessionType(context.CURR_SESSION, newType);
+                if (!parsedArgs[2].equals(System.getProperty("file.encoding"))) {
+                    RibbonServer.logAppend(LOG_ID, 2, "мережева сесія вимогає іншої кодової сторінки:" + parsedArgs[2]);
+                    context.CURR_SESSION.setReaderEncoding(parsedArgs[2]);
+                }
+                context.IS_FRAMED = parsedArgs[1].equals(STR_FRAMED_VERSION);
+                context.CURR_SESSION.setFramedInput(context.IS_FRAMED);
+                context.START_COMPRESSION = parsedArgs[3].equals(COMPRESSION_DEFLATE);
+                String answer;
+                if (isResume) {
+                    context.acceptResume(exicted);
+                    answer = "OK:" + exicted.SESSION_HASH_ID;
+                } else {
+                    answer = context.acceptLogin(userName);
+                }
+                if (isRemote) {
+                    context.IS_REMOTE = true;
+                    RibbonServer.logAppend(LOG_ID, 3, "увімкнено видалений режим (" + context.CURR_SESSION.SESSION_TIP + ")");
+                }
+                return answer;
+            }
+        });
+        
         /**
          * RIBBON_NCTL_LOGIN: commandlet
          * Client and other applications send this command to login user.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_LOGIN", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_LOGIN", CONNECTION_TYPES.ANY) {
           @Override
-          public String exec(String args) {
+          public String exec(RibbonProtocol context, String args) {
               String[] parsedArgs = Generic.CsvFormat.commonParseLine(args, 2);
               if (!RibbonServer.ACCESS_ALLOW_MULTIPLIE_LOGIN && SessionManager.isAlreadyLogined(parsedArgs[0])) {
                   return "RIBBON_ERROR:Користувач " + parsedArgs[0] + " вже увійшов до системи!";
               }
-              if (CURR_TYPE == CONNECTION_TYPES.CONTROL && (!AccessHandler.isUserIsMemberOf(parsedArgs[0], "ADM"))) {
+              if (context.CURR_TYPE == CONNECTION_TYPES.CONTROL && (!AccessHandler.isUserIsMemberOf(parsedArgs[0], "ADM"))) {
                   return "RIBBON_ERROR:Користувач " + parsedArgs[0] + " не є адміністратором системи.";
               }
               String returned = AccessHandler.PROC_LOGIN_USER(parsedArgs[0], parsedArgs[1]);
               if (returned == null) {
-                  if (CURR_TYPE == CONNECTION_TYPES.CLIENT) {
-                      RibbonServer.logAppend(LOG_ID, 3, "користувач " + parsedArgs[0] + " увійшов до системи.");
-                  } else if (CURR_TYPE == CONNECTION_TYPES.CONTROL) {
-                      RibbonServer.logAppend(LOG_ID, 3, "адміністратор " + parsedArgs[0] + " увійшов до системи.");
-                      if (RibbonServer.CONTROL_IS_PRESENT == false) {
-                          RibbonServer.logAppend(RibbonServer.LOG_ID, 2, "ініційовано контроль системи!");
-                          RibbonServer.CONTROL_IS_PRESENT = true;
-                      }
-                  }
-                  CURR_SESSION.USER_NAME = parsedArgs[0];
-                  if (RibbonServer.ACCESS_ALLOW_SESSIONS) {
-                      CURR_SESSION.CURR_ENTRY = SessionManager.createSessionEntry(parsedArgs[0]);
-                      CURR_SESSION.setSessionName();
-                      return "OK:" + CURR_SESSION.CURR_ENTRY.SESSION_HASH_ID;
-                  } else {
-                      return "OK:";
-                  }
+                  return context.acceptLogin(parsedArgs[0]);
               } else {
                   return "RIBBON_ERROR:" + returned;
               }
@@ -235,15 +645,15 @@ public class RibbonProtocol {
          * RIBBON_NCTL_GET_ID: commandlet
          * Find out session ID.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_GET_ID", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_GET_ID", CONNECTION_TYPES.ANY, true) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 if (!RibbonServer.ACCESS_ALLOW_SESSIONS) {
                     return "RIBBON_ERROR:Сесії вимкнено!";
-                } else if (CURR_SESSION.CURR_ENTRY == null) {
+                } else if (context.CURR_SESSION.CURR_ENTRY == null) {
                     return "RIBBON_ERROR:Вхід не виконано!";
                 } else {
-                    return CURR_SESSION.CURR_ENTRY.SESSION_HASH_ID;
+                    return context.CURR_SESSION.CURR_ENTRY.SESSION_HASH_ID;
                 }
             }
         });
@@ -252,9 +662,9 @@ public class RibbonProtocol {
          * RIBBON_NCTL_RESUME: commandlet
          * Resume session by given hash id.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_RESUME", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_RESUME", CONNECTION_TYPES.ANY) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 if (!RibbonServer.ACCESS_ALLOW_SESSIONS) {
                     return "RIBBON_ERROR:Сесії вимкнено!";
                 }
@@ -264,10 +674,7 @@ public class RibbonProtocol {
                 } else {
                     String returned = AccessHandler.PROC_RESUME_USER(exicted);
                     if (returned == null) {
-                        SessionManager.reniewEntry(exicted);
-                          CURR_SESSION.USER_NAME = exicted.SESSION_USER_NAME;
-                          CURR_SESSION.CURR_ENTRY = exicted;
-                          CURR_SESSION.setSessionName();
+                        context.acceptResume(exicted);
                         return "OK:";
                     } else {
                         return "RIBBON_ERROR:" + returned;
@@ -280,23 +687,23 @@ public class RibbonProtocol {
          * RIBBON_NCTL_REM_LOGIN: commandlet
          * Remote login command.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_REM_LOGIN", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_REM_LOGIN", CONNECTION_TYPES.ANY) {
             @Override
-            public String exec(String args) {
-                if (!RibbonServer.ACCESS_ALLOW_REMOTE && !IS_REMOTE) {
+            public String exec(RibbonProtocol context, String args) {
+                if (!RibbonServer.ACCESS_ALLOW_REMOTE && !context.IS_REMOTE) {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
-                } else if (CURR_SESSION.USER_NAME == null) {
+                } else if (context.CURR_SESSION.USER_NAME == null) {
                     return "RIBBON_ERROR:Вхід не виконано!";
                 }
                 String[] parsedArgs = Generic.CsvFormat.commonParseLine(args, 2);
-                if (CURR_TYPE == CONNECTION_TYPES.CONTROL && (!AccessHandler.isUserIsMemberOf(parsedArgs[0], "ADM"))) {
+                if (context.CURR_TYPE == CONNECTION_TYPES.CONTROL && (!AccessHandler.isUserIsMemberOf(parsedArgs[0], "ADM"))) {
                     return "RIBBON_ERROR:Користувач " + parsedArgs[0] + " не є адміністратором системи.";
                 }
                 String returned = AccessHandler.PROC_LOGIN_USER(parsedArgs[0], parsedArgs[1]);
                 if (returned == null) {
-                    if (CURR_TYPE == CONNECTION_TYPES.CLIENT) {
+                    if (context.CURR_TYPE == CONNECTION_TYPES.CLIENT) {
                         RibbonServer.logAppend(LOG_ID, 3, "користувач " + parsedArgs[0] + " видалено увійшов до системи.");
-                    } else if (CURR_TYPE == CONNECTION_TYPES.CONTROL) {
+                    } else if (context.CURR_TYPE == CONNECTION_TYPES.CONTROL) {
                         RibbonServer.logAppend(LOG_ID, 3, "адміністратор " + parsedArgs[0] + " видалено увійшов до системи.");
                     }
                     return "OK:";
@@ -310,10 +717,10 @@ public class RibbonProtocol {
          * RIBBON_NCTL_GET_USERNAME: commandlet
          * Get current session username.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_GET_USERNAME", CONNECTION_TYPES.ANY) {
-            public String exec(String args) {
-                if (CURR_SESSION.USER_NAME != null) {
-                    UserClasses.UserEntry curr = AccessHandler.getEntryByName(CURR_SESSION.USER_NAME);
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_GET_USERNAME", CONNECTION_TYPES.ANY, true) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.CURR_SESSION.USER_NAME != null) {
+                    UserClasses.UserEntry curr = AccessHandler.getEntryByName(context.CURR_SESSION.USER_NAME);
                     return "OK:{" + curr.USER_NAME + "},{" + curr.COMM + "}," + Generic.CsvFormat.renderGroup(curr.GROUPS);
                 } else {
                     return "RIBBON_ERROR:Вхід до системи не виконано!";
@@ -321,42 +728,71 @@ public class RibbonProtocol {
             }
         });
         
+        /**
+         * RIBBON_NCTL_PING: commandlet
+         * Keep session alive without any action.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_PING", CONNECTION_TYPES.ANY, true) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                return "OK:";
+            }
+        });
+        
         /**
          * RIBBON_NCTL_SET_REMOTE_MODE: commandlet
          * Set remote flag of this session.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_SET_REMOTE_MODE", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_SET_REMOTE_MODE", CONNECTION_TYPES.ANY) {
             @Override
-            public String exec(String args) {
-                if (CURR_SESSION.USER_NAME == null) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.CURR_SESSION.USER_NAME == null) {
                     return "RIBBON_ERROR:Вхід не виконано!";
                 } else if (!RibbonServer.ACCESS_ALLOW_REMOTE) {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
-                } else if (!AccessHandler.isUserIsMemberOf(CURR_SESSION.USER_NAME, RibbonServer.ACCESS_REMOTE_GROUP)) {
+                } else if (!AccessHandler.isUserIsMemberOf(context.CURR_SESSION.USER_NAME, RibbonServer.ACCESS_REMOTE_GROUP)) {
                     return "RIBBON_ERROR:Ця сессія не може використовувати видалений режим!";
                 }
-                IS_REMOTE = "1".equals(args) ? true : false;
-                if (IS_REMOTE) {
-                    RibbonServer.logAppend(LOG_ID, 3, "увімкнено видалений режим (" + CURR_SESSION.SESSION_TIP + ")");
+                context.IS_REMOTE = "1".equals(args) ? true : false;
+                if (context.IS_REMOTE) {
+                    RibbonServer.logAppend(LOG_ID, 3, "увімкнено видалений режим (" + context.CURR_SESSION.SESSION_TIP + ")");
                 } else {
-                    RibbonServer.logAppend(LOG_ID, 3, "вимкнено видалений режим (" + CURR_SESSION.SESSION_TIP + ")");
+                    RibbonServer.logAppend(LOG_ID, 3, "вимкнено видалений режим (" + context.CURR_SESSION.SESSION_TIP + ")");
                 }
-                return "OK:" + (IS_REMOTE ? "1" : "0");
+                return "OK:" + (context.IS_REMOTE ? "1" : "0");
+            }
+        });
+        
+        /**
+         * RIBBON_NCTL_SET_PIPELINE: commandlet
+         * Set pipelined mode of this session.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_SET_PIPELINE", CONNECTION_TYPES.ANY) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                if (RibbonServer.NETWORK_PIPELINE_DEPTH == 0) {
+                    return "RIBBON_ERROR:Конвеєр команд вимкнено!";
+                }
+                if (context.pipelineSlots == null) {
+                    context.pipelineSlots = new java.util.concurrent.Semaphore(RibbonServer.NETWORK_PIPELINE_DEPTH);
+                }
+                context.IS_PIPELINED = "1".equals(args);
+                return "OK:" + (context.IS_PIPELINED ? RibbonServer.NETWORK_PIPELINE_DEPTH : "0");
             }
         });
         
         /**
          * RIBBON_NCTL_ACCESS_CONTEXT: commandlet
          * Change access mode of next command.
-         * WARNING! this commandlet grab socket control!
-         * WARNING! this commandlet calls to process() method directly!
+         * Next command line is executed by process() when it arrives, 
+         * so session worker doesn't wait for it.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_ACCESS_CONTEXT", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_ACCESS_CONTEXT", CONNECTION_TYPES.ANY) {
             @Override
-            public String exec(String args) {
-                if (CURR_SESSION.USER_NAME == null) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.CURR_SESSION.USER_NAME == null) {
                     return "RIBBON_ERROR:Вхід не виконано!";
-                } else if (!IS_REMOTE) {
+                } else if (!context.IS_REMOTE) {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
                 }
                 UserClasses.UserEntry overUser = AccessHandler.getEntryByName(Generic.CsvFormat.commonParseLine(args, 1)[0]);
@@ -365,18 +801,8 @@ public class RibbonProtocol {
                 } else if (!overUser.IS_ENABLED) {
                     return "RIBBON_ERROR:Користувача заблоковано!";
                 }
-                String oldUserName = CURR_SESSION.USER_NAME;
-                CURR_SESSION.USER_NAME = overUser.USER_NAME;
-                CURR_SESSION.printLnToPeer("PROCEED:");
-                String subResult = null;
-                try {
-                    subResult = process(CURR_SESSION.inStream.readLine());
-                } catch (java.io.IOException ex) {
-                    RibbonServer.logAppend(LOG_ID, 1, "неможливо прочитати дані з сокету!");
-                    SessionManager.closeSession(CURR_SESSION);
-                }
-                CURR_SESSION.USER_NAME = oldUserName;
-                return subResult;
+                context.contextUserName = overUser.USER_NAME;
+                return "PROCEED:";
             }
         });
         
@@ -384,10 +810,10 @@ public class RibbonProtocol {
          * RIBBON_NCTL_CLOSE: commandlet
          * Exit command to close connection.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_NCTL_CLOSE", CONNECTION_TYPES.ANY) {
+        registerCommand(commandMap, new CommandLet("RIBBON_NCTL_CLOSE", CONNECTION_TYPES.ANY) {
             @Override
-            public String exec(String args) {
-                if (CURR_TYPE == CONNECTION_TYPES.CONTROL && SessionManager.hasOtherControl(CURR_SESSION) == false) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.CURR_TYPE == CONNECTION_TYPES.CONTROL && SessionManager.hasOtherControl(context.CURR_SESSION) == false) {
                     RibbonServer.logAppend(RibbonServer.LOG_ID, 2, "контроль над системою завершено!");
                     RibbonServer.CONTROL_IS_PRESENT = false;
                 }
@@ -401,9 +827,9 @@ public class RibbonProtocol {
          * RIBBON_GET_DIRS: commandlet
          * Return all dirs to client in csv form.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_GET_DIRS", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_DIRS", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 return Directories.PROC_GET_DIRS();
             }
         });
@@ -412,14 +838,14 @@ public class RibbonProtocol {
          * RIBBON_GET_PSEUDO: commandlet
          * Return csv list of pseudo directories which user may use.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_GET_PSEUDO", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_PSEUDO", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
-                if (IS_REMOTE) {
-                    if (CURR_SESSION.USER_NAME == null) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.IS_REMOTE) {
+                    if (context.CURR_SESSION.USER_NAME == null) {
                         return "RIBBON_ERROR:Вхід не виконано!";
                     }
-                    return Directories.PROC_GET_PSEUDO(CURR_SESSION.USER_NAME);
+                    return Directories.PROC_GET_PSEUDO(context.CURR_SESSION.USER_NAME);
                 } else {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
                 }
@@ -430,9 +856,9 @@ public class RibbonProtocol {
          * RIBBON_GET_TAGS: commandlet
          * Return all tags to client in csv form.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_GET_TAGS", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_TAGS", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 return Messenger.PROC_GET_TAGS();
             }
         });
@@ -441,45 +867,77 @@ public class RibbonProtocol {
          * RIBBON_LOAD_BASE_FROM_INDEX: commandlet
          * Return all messages which were released later than specified index.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_LOAD_BASE_FROM_INDEX", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_LOAD_BASE_FROM_INDEX", CONNECTION_TYPES.CLIENT, true) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                context.streamEntriesAfter(Integer.parseInt(args.trim()));
+                return "END:";
+            }
+        });
+        
+        /**
+         * RIBBON_LOAD_BASE_PAGE: commandlet
+         * Return page of messages which were released later than specified index. 
+         * Answer ends with <code>END:</code> line with continuation index 
+         * for next page or with empty <code>END:</code> line if base is over.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_LOAD_BASE_PAGE", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
-                return Messenger.PROC_LOAD_BASE_FROM_INDEX(args);
+            public String exec(RibbonProtocol context, String args) {
+                String[] parsedArgs = args.split(",");
+                Integer limit = MAX_PAGE_SIZE;
+                if (parsedArgs.length > 1) {
+                    limit = Math.min(Math.max(Integer.parseInt(parsedArgs[1].trim()), 1), MAX_PAGE_SIZE);
+                }
+                java.util.ArrayList<MessageClasses.MessageEntry> page = Messenger.getEntriesPage(Integer.parseInt(parsedArgs[0].trim()), limit);
+                context.streamEntries(page);
+                if (page.size() < limit) {
+                    return "END:";
+                } else {
+                    return "END:" + page.get(page.size() - 1).getIndex();
+                }
             }
         });
         
+        /**
+         * RIBBON_LOAD_BASE_BY_TAGS: commandlet
+         * Return all messages which have every specified tag.
+         * CSV format:
+         * [TAG_1,TAG_2]
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_LOAD_BASE_BY_TAGS", CONNECTION_TYPES.CLIENT, true) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                java.util.ArrayList<String[]> parsed = Generic.CsvFormat.complexParseLine(args, 0, 1);
+                if (parsed == null || parsed.size() < 2) {
+                    return "RIBBON_ERROR:Невірний формат запиту!";
+                }
+                context.streamEntries(Messenger.getEntriesByTags(parsed.get(1)));
+                return "END:";
+            }
+        });
+
         /**
          * RIBBON_POST_MESSAGE: commandlet
          * Post message to the system.
          * WARNING! this commandlet grab socket control!
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_POST_MESSAGE", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_POST_MESSAGE", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 MessageClasses.Message recievedMessage = new MessageClasses.Message();
                 recievedMessage.createMessageForPost(args);
-                recievedMessage.AUTHOR = CURR_SESSION.USER_NAME;
-                Boolean collectMessage = true;
-                StringBuffer messageBuffer = new StringBuffer();
-                String inLine;
-                while (collectMessage) {
-                    try {
-                        inLine = CURR_SESSION.inStream.readLine();
-                        if (!inLine.equals("END:")) {
-                            messageBuffer.append(inLine);
-                            messageBuffer.append("\n");
-                        } else {
-                            collectMessage = false;
-                        }
-                    } catch (java.io.IOException ex) {
-                        return "RIBBON_ERROR:Неможливо прочитати повідомлення з сокету!";
-                    }
+                recievedMessage.AUTHOR = context.CURR_SESSION.USER_NAME;
+                try {
+                    recievedMessage.CONTENT = context.readMessageBody();
+                } catch (java.io.IOException ex) {
+                    return "RIBBON_ERROR:Неможливо прочитати повідомлення з сокету!";
                 }
-                recievedMessage.CONTENT = messageBuffer.toString();
                 String answer = Procedures.PROC_POST_MESSAGE(recievedMessage);
                 if (answer.equals("OK:")) {
-                    BROADCAST_TAIL = "RIBBON_UCTL_LOAD_INDEX:" + recievedMessage.returnEntry().toCsv();
-                    BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    context.BROADCAST_TAIL = "RIBBON_UCTL_LOAD_INDEX:" + recievedMessage.returnEntry().toCsv();
+                    context.BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    context.BROADCAST_DIRS = recievedMessage.DIRS;
                 }
                 return answer;
             }
@@ -491,10 +949,10 @@ public class RibbonProtocol {
          * WARNING! this commandlet grab socket control!
          * WARNING! this commandlet calls to RIBBON_POST_MESSAGE commandlet
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_POST_MESSAGE_BY_PSEUDO", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_POST_MESSAGE_BY_PSEUDO", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
-                if (IS_REMOTE) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.IS_REMOTE) {
                     java.util.ArrayList<String[]> parsed = Generic.CsvFormat.complexParseLine(args, 4, 1);
                     Directories.PseudoDirEntry currPostPseudo = Directories.getPseudoDir(parsed.get(0)[0]);
                     if (currPostPseudo == null) {
@@ -503,7 +961,7 @@ public class RibbonProtocol {
                     String[] postDirs = currPostPseudo.getinternalDirectories();
                     String commandToPost = "RIBBON_POST_MESSAGE:-1," + Generic.CsvFormat.renderGroup(postDirs) + args.substring(currPostPseudo.PSEUDO_DIR_NAME.length() + 2);
                     RibbonServer.logAppend(LOG_ID, 3, "додано повідомлення через псевдонапрямок '" + currPostPseudo.PSEUDO_DIR_NAME + "'");
-                    return process(commandToPost);
+                    return context.process(commandToPost);
                 } else {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
                 }
@@ -514,14 +972,13 @@ public class RibbonProtocol {
          * RIBBON_GET_MESSAGE: commandlet
          * Retrieve message body.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_GET_MESSAGE", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_MESSAGE", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 String[] parsedArgs = args.split(",");
                 String givenDir = parsedArgs[0];
                 String givenIndex = parsedArgs[1];
-                StringBuffer returnedMessage = new StringBuffer();
-                if (AccessHandler.checkAccess(CURR_SESSION.USER_NAME, givenDir, 0) == false) {
+                if (AccessHandler.checkAccess(context.CURR_SESSION.USER_NAME, givenDir, 0) == false) {
                     return "RIBBON_ERROR:Помилка доступу до напрямку " + givenDir;
                 }
                 String dirPath = Directories.getDirPath(givenDir);
@@ -529,13 +986,29 @@ public class RibbonProtocol {
                     return "RIBBON_ERROR:Напрямок " + givenDir + " не існує!";
                 } else {
                     try {
-                        java.io.BufferedReader messageReader = new java.io.BufferedReader(new java.io.FileReader(dirPath + givenIndex));
-                        while (messageReader.ready()) {
-                            returnedMessage.append(messageReader.readLine());
-                            returnedMessage.append("\n");
+                        java.nio.file.Path messagePath = new java.io.File(dirPath + givenIndex).toPath();
+                        if (context.IS_FRAMED) {
+                            context.FRAME_FILE = java.nio.channels.FileChannel.open(messagePath, java.nio.file.StandardOpenOption.READ);
+                            context.FRAME_FILE_LENGTH = context.FRAME_FILE.size();
+                            return FRAME_HEADER + context.FRAME_FILE_LENGTH;
+                        }
+                        //Message files are written by FileWriter, so they may be sent as is only in default charset
+                        if (context.OUTPUT_CAPTURE == null && context.CURR_SESSION.getOutputCharset().equals(java.nio.charset.Charset.defaultCharset())) {
+                            java.nio.channels.FileChannel messageChannel = java.nio.channels.FileChannel.open(messagePath, java.nio.file.StandardOpenOption.READ);
+                            long messageLength = messageChannel.size();
+                            Boolean isLineClosed = messageLength == 0 || endsWithNewLine(messageChannel, messageLength);
+                            context.CURR_SESSION.transferToPeer(messageChannel, messageLength);
+                            return isLineClosed ? "END:" : "\nEND:";
+                        }
+                        StringBuffer returnedMessage = new StringBuffer();
+                        try (java.io.BufferedReader messageReader = new java.io.BufferedReader(new java.io.FileReader(dirPath + givenIndex))) {
+                            while (messageReader.ready()) {
+                                returnedMessage.append(messageReader.readLine());
+                                returnedMessage.append("\n");
+                            }
                         }
                         return returnedMessage.append("END:").toString();
-                    } catch (java.io.FileNotFoundException ex) {
+                    } catch (java.io.FileNotFoundException | java.nio.file.NoSuchFileException ex) {
                         return "RIBBON_ERROR:Повідмолення не існує!";
                     } catch (java.io.IOException ex) {
                         RibbonServer.logAppend(LOG_ID, 1, "помилка зчитування повідомлення " + givenDir + ":" + givenIndex);
@@ -545,51 +1018,130 @@ public class RibbonProtocol {
             }
         });
         
+        /**
+         * RIBBON_GET_MESSAGES: commandlet
+         * Retrieve bodies of several messages by dir and index pairs.
+         * Answer is frame which contains <code>MESSAGE:dir,index,length</code> 
+         * header line and raw body for every found message and 
+         * <code>MESSAGE_ERROR:dir,index,{reason}</code> line for every failed one.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_MESSAGES", CONNECTION_TYPES.CLIENT, true) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                String[] parsedArgs = args.split(",");
+                if (parsedArgs.length % 2 != 0) {
+                    return "RIBBON_ERROR:Невірний формат запиту!";
+                }
+                if (parsedArgs.length / 2 > MAX_MULTI_GET) {
+                    return "RIBBON_ERROR:Забагато повідомлень у запиті (максимум " + MAX_MULTI_GET + ")";
+                }
+                java.util.HashMap<String, String> dirPaths = new java.util.HashMap<>();
+                java.util.HashMap<String, String> dirErrors = new java.util.HashMap<>();
+                MessageRead[] reads = new MessageRead[parsedArgs.length / 2];
+                Long budget = (long) MAX_FRAME_LENGTH;
+                for (Integer readIndex = 0; readIndex < reads.length; readIndex++) {
+                    String givenDir = parsedArgs[readIndex * 2];
+                    MessageRead currRead = new MessageRead(givenDir, parsedArgs[readIndex * 2 + 1]);
+                    reads[readIndex] = currRead;
+                    if (!dirPaths.containsKey(givenDir) && !dirErrors.containsKey(givenDir)) {
+                        if (AccessHandler.checkAccess(context.CURR_SESSION.USER_NAME, givenDir, 0) == false) {
+                            dirErrors.put(givenDir, "Помилка доступу до напрямку " + givenDir);
+                        } else {
+                            String dirPath = Directories.getDirPath(givenDir);
+                            if (dirPath == null) {
+                                dirErrors.put(givenDir, "Напрямок " + givenDir + " не існує!");
+                            } else {
+                                dirPaths.put(givenDir, dirPath);
+                            }
+                        }
+                    }
+                    if (dirErrors.containsKey(givenDir)) {
+                        currRead.ERROR = dirErrors.get(givenDir);
+                    } else if (!currRead.INDEX.matches("[0-9]+")) {
+                        currRead.ERROR = "Повідмолення не існує!";
+                    } else {
+                        currRead.PATH = new java.io.File(dirPaths.get(givenDir) + currRead.INDEX).toPath();
+                        try {
+                            budget -= java.nio.file.Files.size(currRead.PATH);
+                            if (budget < 0) {
+                                currRead.ERROR = "Перевищено розмір відповіді!";
+                            }
+                        } catch (java.io.IOException ex) {
+                            currRead.ERROR = "Повідмолення не існує!";
+                        }
+                    }
+                }
+                if (reads.length >= PARALLEL_READ_THRESHOLD && RibbonServer.OPT_READ_WORKERS > 1) {
+                    java.util.ArrayList<java.util.concurrent.Future<?>> readFutures = new java.util.ArrayList<>();
+                    for (MessageRead currRead : reads) {
+                        if (currRead.ERROR == null) {
+                            readFutures.add(readExecutor.submit(currRead));
+                        }
+                    }
+                    try {
+                        for (java.util.concurrent.Future<?> currFuture : readFutures) {
+                            currFuture.get();
+                        }
+                    } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                        RibbonServer.logAppend(LOG_ID, 1, "помилка паралельного зчитування повідомлень");
+                        return "RIBBON_ERROR:Помилка виконання команди!";
+                    }
+                } else {
+                    for (MessageRead currRead : reads) {
+                        if (currRead.ERROR == null) {
+                            currRead.run();
+                        }
+                    }
+                }
+                java.io.ByteArrayOutputStream payload = new java.io.ByteArrayOutputStream();
+                for (MessageRead currRead : reads) {
+                    currRead.writeTo(payload, context.CURR_SESSION.getOutputCharset());
+                }
+                context.FRAME_PAYLOAD = payload.toByteArray();
+                return FRAME_HEADER + context.FRAME_PAYLOAD.length;
+            }
+        });
+        
         /**
          * RIBBON_MODIFY_MESSAGE: commandlet
          * Modify text of existing message.
          * WARNING! this commandlet grab socket control!
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_MODIFY_MESSAGE", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_MODIFY_MESSAGE", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
-                StringBuffer messageBuffer = new StringBuffer();
-                String inLine;
-                Boolean collectMessage = true;
+            public String exec(RibbonProtocol context, String args) {
                 String[] parsedArgs = Generic.CsvFormat.splitCsv(args);
                 MessageClasses.MessageEntry matchedEntry = Messenger.getMessageEntryByIndex(parsedArgs[0]);
                 MessageClasses.Message modTemplate = new MessageClasses.Message();
                 modTemplate.createMessageForModify(parsedArgs[1]);
-                while (collectMessage) {
-                    try {
-                        inLine = CURR_SESSION.inStream.readLine();
-                        if (!inLine.equals("END:")) {
-                            messageBuffer.append(inLine);
-                            messageBuffer.append("\n");
-                        } else {
-                            collectMessage = false;
-                        }
-                    } catch (java.io.IOException ex) {
-                        return "RIBBON_ERROR:Неможливо прочитати повідомлення з сокету!";
-                    }
+                try {
+                    modTemplate.CONTENT = context.readMessageBody();
+                } catch (java.io.IOException ex) {
+                    return "RIBBON_ERROR:Неможливо прочитати повідомлення з сокету!";
                 }
-                modTemplate.CONTENT = messageBuffer.toString();
                 if (matchedEntry == null) {
                     return "RIBBON_ERROR:Повідмолення не існує!";
                 }
-                Integer oldIntFlag = AccessHandler.checkAccessForAll(CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2);
-                Integer newIntFlag = AccessHandler.checkAccessForAll(CURR_SESSION.USER_NAME, modTemplate.DIRS, 1);
-                if ((CURR_SESSION.USER_NAME.equals(matchedEntry.AUTHOR) && (newIntFlag == null)) || ((oldIntFlag == null) && (newIntFlag == null))) {
+                Integer oldIntFlag = AccessHandler.checkAccessForAll(context.CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2);
+                Integer newIntFlag = AccessHandler.checkAccessForAll(context.CURR_SESSION.USER_NAME, modTemplate.DIRS, 1);
+                if ((context.CURR_SESSION.USER_NAME.equals(matchedEntry.AUTHOR) && (newIntFlag == null)) || ((oldIntFlag == null) && (newIntFlag == null))) {
                     for (Integer dirIndex = 0; dirIndex < matchedEntry.DIRS.length; dirIndex++) {
-                        if (AccessHandler.checkAccess(CURR_SESSION.USER_NAME, matchedEntry.DIRS[dirIndex], 1) == true) {
+                        if (AccessHandler.checkAccess(context.CURR_SESSION.USER_NAME, matchedEntry.DIRS[dirIndex], 1) == true) {
                             continue;
                         } else {
                             return "RIBBON_ERROR:Помилка доступу до напрямку " + matchedEntry.DIRS[dirIndex] +  ".";
                         }
                     }
-                    Procedures.PROC_MODIFY_MESSAGE(matchedEntry, modTemplate);
-                    BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + matchedEntry.toCsv();
-                    BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    String[] oldDirs = matchedEntry.DIRS.clone();
+                    MessageClasses.MessageEntry modifiedEntry = Procedures.PROC_MODIFY_MESSAGE(matchedEntry, modTemplate);
+                    if (modifiedEntry == null) {
+                        return "RIBBON_ERROR:Повідмолення не існує!";
+                    }
+                    context.BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + modifiedEntry.toCsv();
+                    context.BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    java.util.LinkedHashSet<String> touchedDirs = new java.util.LinkedHashSet<>(java.util.Arrays.asList(oldDirs));
+                    touchedDirs.addAll(java.util.Arrays.asList(modifiedEntry.DIRS));
+                    context.BROADCAST_DIRS = touchedDirs.toArray(new String[touchedDirs.size()]);
                     return "OK:";
                 } else {
                     if (oldIntFlag != null) {
@@ -607,10 +1159,10 @@ public class RibbonProtocol {
          * WARNING! this commandlet grab socket control!
          * WARNING! this commandlet calls to RIBBON_MODIFY_MESSAGE commandlet
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_MODIFY_MESSAGE_BY_PSEUDO", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_MODIFY_MESSAGE_BY_PSEUDO", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
-                if (IS_REMOTE) {
+            public String exec(RibbonProtocol context, String args) {
+                if (context.IS_REMOTE) {
                     java.util.ArrayList<String[]> parsed = Generic.CsvFormat.complexParseLine(args, 5, 1);
                     Directories.PseudoDirEntry currPostPseudo = Directories.getPseudoDir(parsed.get(0)[1]);
                     if (currPostPseudo == null) {
@@ -618,7 +1170,7 @@ public class RibbonProtocol {
                     }
                     String[] postDirs = currPostPseudo.getinternalDirectories();
                     String commandToPost = "RIBBON_MODIFY_MESSAGE:" + parsed.get(0)[0] + "," + Generic.CsvFormat.renderGroup(postDirs) + args.substring(currPostPseudo.PSEUDO_DIR_NAME.length() + 13);
-                    return process(commandToPost);
+                    return context.process(commandToPost);
                 } else {
                     return "RIBBON_ERROR:Видалений режим вимкнено!";
                 }
@@ -629,17 +1181,18 @@ public class RibbonProtocol {
          * RIBBON_DELETE_MESSAGE: commandlet
          * Delete message from all directories.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_DELETE_MESSAGE", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_DELETE_MESSAGE", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 MessageClasses.MessageEntry matchedEntry = Messenger.getMessageEntryByIndex(args);
                 if (matchedEntry == null) {
                     return "RIBBON_ERROR:Повідмолення не існує!";
                 } else {
-                    if (matchedEntry.AUTHOR.equals(CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) == null)) {
+                    if (matchedEntry.AUTHOR.equals(context.CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(context.CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) == null)) {
                         Procedures.PROC_DELETE_MESSAGE(matchedEntry);
-                        BROADCAST_TAIL = "RIBBON_UCTL_DELETE_INDEX:" + matchedEntry.INDEX;
-                        BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                        context.BROADCAST_TAIL = "RIBBON_UCTL_DELETE_INDEX:" + matchedEntry.getIndex();
+                        context.BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                        context.BROADCAST_DIRS = matchedEntry.DIRS;
                         return "OK:";
                     } else {
                         return "RIBBON_ERROR:Помилка доступу до повідомлення.";
@@ -652,24 +1205,28 @@ public class RibbonProtocol {
          * RIBBON_ADD_MESSAGE_PROPERTY: commandlet
          * Add custom property to message.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_ADD_MESSAGE_PROPERTY", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_ADD_MESSAGE_PROPERTY", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 String[] parsedArgs = Generic.CsvFormat.commonParseLine(args, 3);
                 MessageClasses.MessageEntry matchedEntry = Messenger.getMessageEntryByIndex(parsedArgs[0]);
                 if (matchedEntry == null) {
                     return "RIBBON_ERROR:Повідмолення не існує!";
                 }
-                if ((matchedEntry.AUTHOR.equals(CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) != null))) {
-                    MessageClasses.MessageProperty newProp = new MessageClasses.MessageProperty(parsedArgs[1], CURR_SESSION.USER_NAME, parsedArgs[2]);
+                if ((matchedEntry.AUTHOR.equals(context.CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(context.CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) != null))) {
+                    final MessageClasses.MessageProperty newProp = new MessageClasses.MessageProperty(parsedArgs[1], context.CURR_SESSION.USER_NAME, parsedArgs[2]);
                     newProp.TYPE = parsedArgs[1];
                     newProp.TEXT_MESSAGE = parsedArgs[2];
                     newProp.DATE = RibbonServer.getCurrentDate();
-                    newProp.USER = CURR_SESSION.USER_NAME;
-                    matchedEntry.PROPERTIES.add(newProp);
+                    newProp.USER = context.CURR_SESSION.USER_NAME;
+                    MessageClasses.MessageEntry updatedEntry = Messenger.addMessageProperties(matchedEntry.ID, java.util.Collections.singletonList(newProp));
+                    if (updatedEntry == null) {
+                        return "RIBBON_ERROR:Повідмолення не існує!";
+                    }
                     IndexReader.updateBaseIndex();
-                    BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + matchedEntry.toCsv();
-                    BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    context.BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + updatedEntry.toCsv();
+                    context.BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                    context.BROADCAST_DIRS = updatedEntry.DIRS;
                     return "OK:";
                 } else {
                     return "RIBBON_ERROR:Помилка доступу до повідомлення.";
@@ -681,29 +1238,40 @@ public class RibbonProtocol {
          * RIBBON_DEL_MESSAGE_PROPERTY: commandlet
          * Del custom property from specified message.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_DEL_MESSAGE_PROPERTY", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_DEL_MESSAGE_PROPERTY", CONNECTION_TYPES.CLIENT) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 String[] parsedArgs = Generic.CsvFormat.commonParseLine(args, 3);
                 MessageClasses.MessageEntry matchedEntry = Messenger.getMessageEntryByIndex(parsedArgs[0]);
                 if (matchedEntry == null) {
                     return "RIBBON_ERROR:Повідмолення не існує!";
                 }
-                if ((matchedEntry.AUTHOR.equals(CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) != null))) {
-                    MessageClasses.MessageProperty findedProp = null;
-                    java.util.ListIterator<MessageClasses.MessageProperty> propIter = matchedEntry.PROPERTIES.listIterator();
-                    while (propIter.hasNext()) {
-                        MessageClasses.MessageProperty currProp = propIter.next();
-                        if (currProp.TYPE.equals(parsedArgs[1]) && currProp.DATE.equals(parsedArgs[2])) {
-                            findedProp = currProp;
-                            break;
+                if ((matchedEntry.AUTHOR.equals(context.CURR_SESSION.USER_NAME) || (AccessHandler.checkAccessForAll(context.CURR_SESSION.USER_NAME, matchedEntry.DIRS, 2) != null))) {
+                    final String propType = parsedArgs[1];
+                    final String propDate = parsedArgs[2];
+                    final Boolean[] propRemoved = new Boolean[] {false};
+                    MessageClasses.MessageEntry updatedEntry = Messenger.updateMessageEntry(matchedEntry.ID, new java.util.function.Consumer<MessageClasses.MessageEntry>() {
+                        @Override
+                        public void accept(MessageClasses.MessageEntry storedEntry) {
+                            java.util.ListIterator<MessageClasses.MessageProperty> propIter = storedEntry.PROPERTIES.listIterator();
+                            while (propIter.hasNext()) {
+                                MessageClasses.MessageProperty currProp = propIter.next();
+                                if (currProp.TYPE.equals(propType) && currProp.DATE.equals(propDate)) {
+                                    propIter.remove();
+                                    propRemoved[0] = true;
+                                    break;
+                                }
+                            }
                         }
+                    });
+                    if (updatedEntry == null) {
+                        return "RIBBON_ERROR:Повідмолення не існує!";
                     }
-                    if (findedProp != null) {
-                        matchedEntry.PROPERTIES.remove(findedProp);
+                    if (propRemoved[0]) {
                         IndexReader.updateBaseIndex();
-                        BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + matchedEntry.toCsv();
-                        BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                        context.BROADCAST_TAIL = "RIBBON_UCTL_UPDATE_INDEX:" + updatedEntry.toCsv();
+                        context.BROADCAST_TYPE = CONNECTION_TYPES.CLIENT;
+                        context.BROADCAST_DIRS = updatedEntry.DIRS;
                         return "OK:";
                     } else {
                         return "RIBBON_ERROR:Системної ознаки не існує!";
@@ -714,19 +1282,442 @@ public class RibbonProtocol {
             }
         });
         
+        /**
+         * RIBBON_SET_SUBSCRIPTION: commandlet
+         * Receive index broadcasts only for given directories (empty group to receive all). 
+         * Directories without read access are skipped.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_SET_SUBSCRIPTION", CONNECTION_TYPES.CLIENT) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                String groupLine = args.trim();
+                if (groupLine.startsWith("[") && groupLine.endsWith("]")) {
+                    groupLine = groupLine.substring(1, groupLine.length() - 1);
+                }
+                java.util.LinkedHashSet<String> acceptedDirs = new java.util.LinkedHashSet<>();
+                for (String currDir : groupLine.split(",")) {
+                    currDir = currDir.trim();
+                    if (currDir.isEmpty()) {
+                        continue;
+                    }
+                    if (Directories.getDirPath(currDir) == null || !AccessHandler.checkAccess(context.CURR_SESSION.USER_NAME, currDir, 0)) {
+                        continue;
+                    }
+                    acceptedDirs.add(currDir);
+                }
+                if (acceptedDirs.isEmpty() && !groupLine.trim().isEmpty()) {
+                    return "RIBBON_ERROR:Немає доступних напрямків для підписки!";
+                }
+                SessionManager.updateSessionDirs(context.CURR_SESSION, acceptedDirs);
+                return "OK:" + (acceptedDirs.isEmpty() ? "[]" : Generic.CsvFormat.renderGroup(acceptedDirs.toArray(new String[acceptedDirs.size()])));
+            }
+        });
+        
         /**
          * RIBBON_GET_USERS: commandlet
          * Get all system users without ADM group members.
          */
-        this.RIBBON_COMMANDS.add(new CommandLet("RIBBON_GET_USERS", CONNECTION_TYPES.CLIENT) {
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_USERS", CONNECTION_TYPES.CLIENT, true) {
             @Override
-            public String exec(String args) {
+            public String exec(RibbonProtocol context, String args) {
                 return AccessHandler.PROC_GET_USERS_UNI(false);
             }
         });
         
         /** SERVER CONTROL PROTOCOL STACK [LEVEL_2 SUPPORT] **/
         
+        /**
+         * RIBBON_GET_COMMAND_COUNTERS: commandlet
+         * Get invocation count of every protocol command.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_COMMAND_COUNTERS", CONNECTION_TYPES.CONTROL, true) {
+            @Override
+            public String exec(RibbonProtocol context, String args) {
+                StringBuffer counterBuf = new StringBuffer();
+                java.util.TreeMap<String, CommandLet> sortedCommands = new java.util.TreeMap<String, CommandLet>(RIBBON_COMMANDS);
+                for (CommandLet currComm : sortedCommands.values()) {
+                    counterBuf.append(currComm.COMMAND_NAME).append(",").append(currComm.CALL_COUNT.sum()).append("\n");
+                }
+                return counterBuf.append("END:").toString();
+            }
+        });
+        
+        /**
+         * RIBBON_GET_STATS: commandlet
+         * Get server counters, execution time of commands (in microseconds) and outbound queues of lagging sessions. 
+         * Positive argument sends same lines every given count of seconds, 0 stops updates.
+         */
+        registerCommand(commandMap, new CommandLet("RIBBON_GET_STATS", CONNECTION_TYPES.CONTROL) {
+            @Override
+            public String exec(final RibbonProtocol context, String args) {
+                if (args.isEmpty()) {
+                    return renderStats() + "\nEND:";
+                }
+                Integer interval;
+                try {
+                    interval = Integer.parseInt(args.trim());
+                } catch (NumberFormatException ex) {
+                    return "RIBBON_ERROR:Невірний формат запиту!";
+                }
+                if (interval < 0) {
+                    return "RIBBON_ERROR:Невірний формат запиту!";
+                }
+                synchronized (context) {
+                    if (context.statsStream != null) {
+                        context.statsStream.cancel(false);
+                        context.statsStream = null;
+                    }
+                    if (interval > 0) {
+                        context.statsStream = statsTimer.scheduleWithFixedDelay(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (context.CURR_SESSION.isAlive) {
+                                    context.CURR_SESSION.enqueueToPeer(renderStats());
+                                } else {
+                                    synchronized (context) {
+                                        context.statsStream.cancel(false);
+                                    }
+                                }
+                            }
+                        }, interval, interval, java.util.concurrent.TimeUnit.SECONDS);
+                    }
+                }
+                return "OK:" + interval;
+            }
+        });
+        
+    }
+    
+    /**
+     * Render server counters and statistics of invoked commands.
+     * <p>First line: <code>SERVER,connections,slow_disconnects,reaped_sessions,
+     * rejected_connections,rejected_commands,dropped_log_lines</code>; 
+     * next lines: <code>COMMAND,calls,errors,mean,p50,p90,p99,max</code> 
+     * and <code>SESSION,{name},queue_depth,max_queue_depth,dropped,slow</code>.<br>
+     * Commands without calls and sessions without queued or dropped broadcasts are skipped.</p>
+     * @return lines of statistics;
+     * @since RibbonServer a3
+     */
+    private static String renderStats() {
+        StringBuilder statsBuf = new StringBuilder();
+        statsBuf.append("RIBBON_UCTL_STATS:SERVER,").append(SessionManager.getConnectionCount())
+                .append(",").append(SessionManager.slowDisconnects.get())
+                .append(",").append(SessionManager.reapedSessions.get())
+                .append(",").append(AdmissionControl.rejectedConnections.get())
+                .append(",").append(AdmissionControl.rejectedCommands.get())
+                .append(",").append(SessionManager.droppedLogLines.get());
+        java.util.TreeMap<String, CommandLet> sortedCommands = new java.util.TreeMap<String, CommandLet>(RIBBON_COMMANDS);
+        for (CommandLet currComm : sortedCommands.values()) {
+            long calls = currComm.CALL_COUNT.sum();
+            if (calls == 0) {
+                continue;
+            }
+            statsBuf.append("\nRIBBON_UCTL_STATS:").append(currComm.COMMAND_NAME).append(",").append(calls)
+                    .append(",").append(currComm.ERROR_COUNT.sum()).append(",").append(currComm.LATENCY.toCsv());
+        }
+        for (SessionManager.Session currSession : SessionManager.getSessions()) {
+            Integer depth = currSession.getQueueDepth();
+            long dropped = currSession.DROPPED_COUNT.get();
+            if (depth == 0 && dropped == 0) {
+                continue;
+            }
+            statsBuf.append("\nRIBBON_UCTL_STATS:SESSION,{").append(currSession.SESSION_TIP != null ? currSession.SESSION_TIP : currSession.getPeerAddress())
+                    .append("},").append(depth).append(",").append(currSession.MAX_QUEUE_DEPTH)
+                    .append(",").append(dropped).append(",").append(currSession.IS_SLOW.get() ? "1" : "0");
+        }
+        return statsBuf.toString();
+    }
+    
+    /**
+     * Register command in command map.
+     * @param commandMap map to register command in;
+     * @param givenCommand command to register;
+     * @since RibbonServer a3
+     */
+    private static void registerCommand(java.util.Map<String, CommandLet> commandMap, CommandLet givenCommand) {
+        if (commandMap.put(givenCommand.COMMAND_NAME, givenCommand) != null) {
+            throw new IllegalStateException("Duplicate command " + givenCommand.COMMAND_NAME);
+        }
+    }
+    
+    /**
+     * Bind logined user to this session and create session entry.
+     * @param userName name of the user;
+     * @return command answer (with session hash id if sessions are allowed);
+     * @since RibbonServer a3
+     */
+    private String acceptLogin(String userName) {
+        if (this.CURR_TYPE == CONNECTION_TYPES.CLIENT) {
+            RibbonServer.logAppend(LOG_ID, 3, "користувач " + userName + " увійшов до системи.");
+        } else if (this.CURR_TYPE == CONNECTION_TYPES.CONTROL) {
+            RibbonServer.logAppend(LOG_ID, 3, "адміністратор " + userName + " увійшов до системи.");
+            if (RibbonServer.CONTROL_IS_PRESENT == false) {
+                RibbonServer.logAppend(RibbonServer.LOG_ID, 2, "ініційовано контроль системи!");
+                RibbonServer.CONTROL_IS_PRESENT = true;
+            }
+        }
+        SessionManager.updateSessionUser(this.CURR_SESSION, userName);
+        if (RibbonServer.ACCESS_ALLOW_SESSIONS) {
+            this.CURR_SESSION.CURR_ENTRY = SessionManager.createSessionEntry(userName);
+            this.CURR_SESSION.setSessionName();
+            return "OK:" + this.CURR_SESSION.CURR_ENTRY.SESSION_HASH_ID;
+        } else {
+            return "OK:";
+        }
+    }
+    
+    /**
+     * Bind resumed session entry to this session.
+     * @param givenEntry session entry which passed resume check;
+     * @since RibbonServer a3
+     */
+    private void acceptResume(SessionManager.SessionEntry givenEntry) {
+        SessionManager.reniewEntry(givenEntry);
+        SessionManager.updateSessionUser(this.CURR_SESSION, givenEntry.SESSION_USER_NAME);
+        this.CURR_SESSION.CURR_ENTRY = givenEntry;
+        this.CURR_SESSION.setSessionName();
+    }
+    
+    /**
+     * Read message body from session according to protocol version.<br>
+     * <b>WARNING!</b> this method grab socket control!
+     * @return message body;
+     * @throws java.io.IOException if body can't be readed;
+     * @since RibbonServer a3
+     */
+    private String readMessageBody() throws java.io.IOException {
+        if (this.IS_FRAMED) {
+            return this.CURR_SESSION.readFrame(parseFrameHeader(this.CURR_SESSION.readLine()));
+        }
+        StringBuffer messageBuffer = new StringBuffer();
+        String inLine;
+        while (!(inLine = this.CURR_SESSION.readLine()).equals("END:")) {
+            messageBuffer.append(inLine);
+            messageBuffer.append("\n");
+        }
+        return messageBuffer.toString();
+    }
+    
+    /**
+     * Send all message entries which were released after specified index.<br>
+     * Entries are taken from store page by page, so only one page is held in memory.
+     * @param afterIndex numeric message index (exclusive), 0 for beginning of base;
+     * @since RibbonServer a3
+     */
+    private void streamEntriesAfter(Integer afterIndex) {
+        java.util.ArrayList<MessageClasses.MessageEntry> page;
+        Integer pageStart = afterIndex;
+        while (!(page = Messenger.getEntriesPage(pageStart, STREAM_PAGE_SIZE)).isEmpty()) {
+            this.streamEntries(page);
+            pageStart = page.get(page.size() - 1).ID;
+        }
+    }
+    
+    /**
+     * Send message entries to session peer by chunks.<br>
+     * Entries are rendered chunk by chunk, so whole answer is never held in memory.
+     * @param entries entries to send;
+     * @since RibbonServer a3
+     */
+    private void streamEntries(java.util.List<MessageClasses.MessageEntry> entries) {
+        StringBuilder chunkBuf = new StringBuilder();
+        Integer chunkLines = 0;
+        for (MessageClasses.MessageEntry currEntry : entries) {
+            if (chunkLines > 0) {
+                chunkBuf.append("\n");
+            }
+            chunkBuf.append("RIBBON_UCTL_LOAD_INDEX:").append(currEntry.toCsv());
+            if (++chunkLines == STREAM_CHUNK_SIZE) {
+                this.emitLine(chunkBuf.toString());
+                chunkBuf.setLength(0);
+                chunkLines = 0;
+            }
+        }
+        if (chunkLines > 0) {
+            this.emitLine(chunkBuf.toString());
+        }
+    }
+    
+    /**
+     * Check if file ends with line separator.
+     * @param file file to check;
+     * @param length length of the file;
+     * @return true if last byte is line separator;
+     * @throws java.io.IOException 
+     * @since RibbonServer a3
+     */
+    private static Boolean endsWithNewLine(java.nio.channels.FileChannel file, long length) throws java.io.IOException {
+        java.nio.ByteBuffer lastByte = java.nio.ByteBuffer.allocate(1);
+        file.read(lastByte, length - 1);
+        return lastByte.get(0) == '\n';
+    }
+    
+    /**
+     * Send part of answer before answer itself.
+     * @param line line (or several lines) to send;
+     * @since RibbonServer a3
+     */
+    private void emitLine(String line) {
+        if (this.OUTPUT_CAPTURE != null) {
+            this.OUTPUT_CAPTURE.append(line).append("\n");
+        } else {
+            this.CURR_SESSION.appendLnToPeer(line);
+        }
+    }
+    
+    /**
+     * Find out if command is followed by message body.
+     * @param command command word;
+     * @return true if command has body;
+     * @since RibbonServer a3
+     */
+    public static Boolean isBodyCommand(String command) {
+        for (String bodyPrefix : BODY_COMMANDS) {
+            if (command.startsWith(bodyPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Split tagged line to request id and command line.
+     * @param inputLine line with <code>RIBBON_TAGGED:id,command</code> form;
+     * @return array with id and command line or null if line isn't tagged;
+     * @since RibbonServer a3
+     */
+    public static String[] splitTagged(String inputLine) {
+        if (inputLine == null || !inputLine.startsWith(TAGGED_PREFIX)) {
+            return null;
+        }
+        Integer splitIndex = inputLine.indexOf(',', TAGGED_PREFIX.length());
+        if (splitIndex == -1) {
+            return null;
+        }
+        return new String[] {inputLine.substring(TAGGED_PREFIX.length(), splitIndex), inputLine.substring(splitIndex + 1)};
+    }
+    
+    /**
+     * Start capture of streamed output for tagged command.
+     * @since RibbonServer a3
+     */
+    public void beginCapture() {
+        this.OUTPUT_CAPTURE = new StringBuilder();
+    }
+    
+    /**
+     * Finish capture and render tagged answer.<br>
+     * Answer begins with <code>RIBBON_TAGGED:id,count</code> header, where count 
+     * is count of lines which follow header (frame payload isn't counted).
+     * @param requestId id of request;
+     * @param answer answer of the command;
+     * @return tagged answer;
+     * @since RibbonServer a3
+     */
+    public String endCapture(String requestId, String answer) {
+        StringBuilder capture = this.OUTPUT_CAPTURE == null ? new StringBuilder() : this.OUTPUT_CAPTURE;
+        this.OUTPUT_CAPTURE = null;
+        capture.append(answer);
+        Integer lineCount = 1;
+        for (int index = 0; index < capture.length(); index++) {
+            if (capture.charAt(index) == '\n') {
+                lineCount++;
+            }
+        }
+        return TAGGED_PREFIX + requestId + "," + lineCount + "\n" + capture;
+    }
+    
+    /**
+     * Reset capture of streamed output after failure.
+     * @since RibbonServer a3
+     */
+    public void resetCapture() {
+        this.OUTPUT_CAPTURE = null;
+    }
+    
+    /**
+     * Execute read-only tagged command concurrently.
+     * @param requestId id of request;
+     * @param commandLine command line without tag;
+     * @return false if command should be executed in order by caller;
+     * @since RibbonServer a3
+     */
+    public Boolean submitTagged(final String requestId, final String commandLine) {
+        String[] parsed = Generic.CsvFormat.parseDoubleStruct(commandLine);
+        if (parsed == null || this.pipelineSlots == null || this.contextUserName != null) {
+            return false;
+        }
+        CommandLet taggedComm = RIBBON_COMMANDS.get(parsed[0]);
+        if (taggedComm == null || !taggedComm.READ_ONLY) {
+            return false;
+        }
+        final RibbonProtocol taskContext = new RibbonProtocol(this);
+        final java.util.concurrent.Semaphore slots = this.pipelineSlots;
+        slots.acquireUninterruptibly();
+        try {
+            pipelineExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        taskContext.beginCapture();
+                        String answer = taskContext.endCapture(requestId, taskContext.process(commandLine));
+                        taskContext.CURR_SESSION.outputLock.lock();
+                        try {
+                            taskContext.CURR_SESSION.appendLnToPeer(answer);
+                            if (taskContext.FRAME_PAYLOAD != null) {
+                                taskContext.CURR_SESSION.writeToPeer(taskContext.FRAME_PAYLOAD);
+                            }
+                            if (taskContext.FRAME_FILE != null) {
+                                taskContext.CURR_SESSION.transferToPeer(taskContext.FRAME_FILE, taskContext.FRAME_FILE_LENGTH);
+                            }
+                            taskContext.CURR_SESSION.flushPeer();
+                        } finally {
+                            taskContext.CURR_SESSION.outputLock.unlock();
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            slots.release();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Wait until all pipelined commands of this session are completed.
+     * @since RibbonServer a3
+     */
+    public void awaitPipeline() {
+        if (this.pipelineSlots != null) {
+            this.pipelineSlots.acquireUninterruptibly(RibbonServer.NETWORK_PIPELINE_DEPTH);
+            this.pipelineSlots.release(RibbonServer.NETWORK_PIPELINE_DEPTH);
+        }
+    }
+    
+    /**
+     * Parse frame header line and return payload length.
+     * @param headerLine line with frame header;
+     * @return length of frame payload in bytes;
+     * @throws java.io.IOException if header is malformed or length is out of bounds;
+     * @since RibbonServer a3
+     */
+    public static Integer parseFrameHeader(String headerLine) throws java.io.IOException {
+        if (headerLine == null || !headerLine.startsWith(FRAME_HEADER)) {
+            throw new java.io.IOException("Frame header expected");
+        }
+        Integer length;
+        try {
+            length = Integer.parseInt(headerLine.substring(FRAME_HEADER.length()).trim());
+        } catch (NumberFormatException ex) {
+            throw new java.io.IOException("Malformed frame header");
+        }
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new java.io.IOException("Frame length out of bounds");
+        }
+        return length;
     }
     
     /**
@@ -737,7 +1728,17 @@ public class RibbonProtocol {
      */
     public String process(String input) {
         String[] parsed = Generic.CsvFormat.parseDoubleStruct(input);
-        return this.launchCommand(parsed[0], parsed[1]);
+        if (this.contextUserName == null) {
+            return this.launchCommand(parsed[0], parsed[1]);
+        }
+        String oldUserName = this.CURR_SESSION.USER_NAME;
+        this.CURR_SESSION.USER_NAME = this.contextUserName;
+        this.contextUserName = null;
+        try {
+            return this.launchCommand(parsed[0], parsed[1]);
+        } finally {
+            this.CURR_SESSION.USER_NAME = oldUserName;
+        }
     }
     
     /**
@@ -748,26 +1749,34 @@ public class RibbonProtocol {
      * @since RibbonServer a1
      */
     private String launchCommand(String command, String args) {
-        CommandLet exComm = null;
-        java.util.ListIterator<CommandLet> commIter = this.RIBBON_COMMANDS.listIterator();
-        while (commIter.hasNext()) {
-            CommandLet currComm = commIter.next();
-            if (currComm.COMMAND_NAME.equals(command)) {
-                if (currComm.COMM_TYPE == this.CURR_TYPE || (currComm.COMM_TYPE == CONNECTION_TYPES.ANY && this.CURR_TYPE != CONNECTION_TYPES.NULL) || this.CURR_TYPE == CONNECTION_TYPES.CONTROL) {
-                    if (this.CURR_SESSION.USER_NAME == null && (currComm.COMM_TYPE == CONNECTION_TYPES.CLIENT || currComm.COMM_TYPE == CONNECTION_TYPES.CONTROL)) {
-                        return "RIBBON_ERROR:Вхід не виконано!";
-                    } else {
-                        exComm = currComm;
-                    }
-                    break;
-                } else {
-                    return "RIBBON_ERROR:Ця команда не може бути використана цим з’єднанням!";
+        if (!AdmissionControl.allowCommand(this.CURR_SESSION)) {
+            if (isBodyCommand(command)) {
+                try {
+                    this.readMessageBody();
+                } catch (java.io.IOException ex) {
+                    this.CURR_SESSION.closeConnection();
                 }
             }
+            return "RIBBON_ERROR:Перевищено ліміт команд!";
         }
+        CommandLet exComm = RIBBON_COMMANDS.get(command);
         if (exComm != null) {
+            if (exComm.COMM_TYPE == this.CURR_TYPE || (exComm.COMM_TYPE == CONNECTION_TYPES.ANY && this.CURR_TYPE != CONNECTION_TYPES.NULL) || this.CURR_TYPE == CONNECTION_TYPES.CONTROL) {
+                if (this.CURR_SESSION.USER_NAME == null && (exComm.COMM_TYPE == CONNECTION_TYPES.CLIENT || exComm.COMM_TYPE == CONNECTION_TYPES.CONTROL)) {
+                    return "RIBBON_ERROR:Вхід не виконано!";
+                }
+            } else {
+                return "RIBBON_ERROR:Ця команда не може бути використана цим з’єднанням!";
+            }
+        }
+        if (exComm != null) {
+            exComm.CALL_COUNT.increment();
+            long startTime = System.nanoTime();
+            Boolean failed = true;
             try {
-                return exComm.exec(args);
+                String answer = exComm.exec(this, args);
+                failed = answer.startsWith("RIBBON_ERROR");
+                return answer;
             } catch (Exception ex) {
                 Procedures.postException("Помилка при роботі сесії " + this.CURR_SESSION.SESSION_TIP
                         + "\nКоманда: " + command + ":" + args + "\n\n", ex);
@@ -791,6 +1800,11 @@ public class RibbonProtocol {
                 RibbonServer.logAppend(LOG_ID, 1, "помилка при виконанні команди " + exComm.COMMAND_NAME + "!");
                 **/
                 return "RIBBON_ERROR:Помилка команди:" + ex.toString();
+            } finally {
+                exComm.LATENCY.record(System.nanoTime() - startTime);
+                if (failed) {
+                    exComm.ERROR_COUNT.increment();
+                }
             }
         } else {
             return "RIBBON_ERROR:Невідома команда!";
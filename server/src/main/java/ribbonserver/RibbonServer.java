@@ -168,6 +168,138 @@ public class RibbonServer {
      */
     public static Integer NETWORK_MAX_CONNECTIONS;
     
+    /**
+     * Network engine name: <code>thread</code> (thread per connection) or <code>nio</code> (selector loops).
+     * @since RibbonServer a3
+     */
+    public static String NETWORK_ENGINE;
+    
+    /**
+     * Thread mode of <code>thread</code> engine: <code>platform</code> or <code>virtual</code>.
+     * @since RibbonServer a3
+     */
+    public static String NETWORK_THREAD_MODE;
+    
+    /**
+     * Capacity of outbound broadcast queue of each session.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_OUT_QUEUE_SIZE;
+    
+    /**
+     * Outbound queue depth after which session is treated as slow consumer.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_SLOW_THRESHOLD;
+    
+    /**
+     * Slow consumer policy: <code>mark</code> (drop overflow) or <code>disconnect</code>.
+     * @since RibbonServer a3
+     */
+    public static String NETWORK_SLOW_POLICY;
+    
+    /**
+     * Time in milliseconds while broadcasts are collected before write (0 to write at once).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_BROADCAST_WINDOW;
+    
+    /**
+     * Maximum count of broadcast lines in one write.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_BROADCAST_BATCH;
+    
+    /**
+     * Count of selector loops for <code>nio</code> engine.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_NIO_LOOPS;
+    
+    /**
+     * Count of command workers for <code>nio</code> engine.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_NIO_WORKERS;
+    
+    /**
+     * Maximum count of pipelined commands in flight for one session (0 disables pipelining).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_PIPELINE_DEPTH;
+    
+    /**
+     * Count of threads which execute pipelined commands.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_PIPELINE_WORKERS;
+    
+    /**
+     * Time in seconds without incoming data after which session is closed (0 to disable).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_IDLE_TIMEOUT;
+    
+    /**
+     * Time in seconds for login after connection (0 to disable).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_LOGIN_TIMEOUT;
+    
+    /**
+     * Time in seconds of peer silence after which heartbeat is sent (0 to disable).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_HEARTBEAT_INTERVAL;
+    
+    /**
+     * Port for <code>CONTROL</code> connections only (0 to disable).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_CONTROL_PORT;
+    
+    /**
+     * Count of connections reserved for control port.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_CONTROL_MAX_CONNECTIONS;
+    
+    /**
+     * Capacity of log queue for <code>CONTROL</code> connections.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_CONTROL_LOG_QUEUE;
+    
+    /**
+     * Length of queue of incoming connections of listening socket.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_ACCEPT_BACKLOG;
+    
+    /**
+     * Connections per second allowed from one address (0 to disable limit).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_CONNECT_RATE;
+    
+    /**
+     * Count of connections which one address may open at once above the rate.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_CONNECT_BURST;
+    
+    /**
+     * Commands per second allowed from one address (0 to disable limit).
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_COMMAND_RATE;
+    
+    /**
+     * Count of commands which one address may send at once above the rate.
+     * @since RibbonServer a3
+     */
+    public static Integer NETWORK_COMMAND_BURST;
+    
     /**
      * Cache switch <b>[not yet implemented]</b>.
      * @since RibbonServer a2
@@ -234,6 +366,18 @@ public class RibbonServer {
      */
     public static Boolean OPT_CREATE_REPORTS;
     
+    /**
+     * Count of threads which read message files for multi-get commands.
+     * @since RibbonServer a3
+     */
+    public static Integer OPT_READ_WORKERS;
+    
+    /**
+     * Message index store name: <code>objects</code> (entry objects) or <code>columnar</code> (compact columns).
+     * @since RibbonServer a3
+     */
+    public static String OPT_INDEX_STORE;
+    
     /**
      * Enable/disable import and export operations.
      * @since RibbonServer a2
@@ -323,7 +467,7 @@ public class RibbonServer {
                 }
             }
             Procedures.PROC_POST_MESSAGE(givenMessage);
-            SessionManager.broadcast("RIBBON_UCTL_LOAD_INDEX:" + givenMessage.toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT);
+            SessionManager.broadcast("RIBBON_UCTL_LOAD_INDEX:" + givenMessage.toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT, givenMessage.DIRS);
         }
 
         @Override
@@ -382,9 +526,13 @@ public class RibbonServer {
         }
 
         @Override
-        public void updateIndex(String givenIndex) {
+        public void updateIndex(MessageClasses.MessageEntry givenEntry, java.util.List<MessageClasses.MessageProperty> addedProperties) {
+            MessageClasses.MessageEntry updatedEntry = Messenger.addMessageProperties(givenEntry.ID, addedProperties);
             IndexReader.updateBaseIndex();
-            SessionManager.broadcast("RIBBON_UCTL_UPDATE_INDEX:" + Messenger.getMessageEntryByIndex(givenIndex).toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT);
+            if (updatedEntry == null) {
+                return;
+            }
+            SessionManager.broadcast("RIBBON_UCTL_UPDATE_INDEX:" + updatedEntry.toCsv(), RibbonProtocol.CONNECTION_TYPES.CLIENT, updatedEntry.DIRS);
         }
 
         @Override
@@ -434,14 +582,32 @@ public class RibbonServer {
         validateSystemVariables();
         logAppend(LOG_ID, 2, "налаштування мережі");
         try {
-            java.net.ServerSocket RibbonServSocket = new java.net.ServerSocket(NETWORK_PORT);
-            logAppend(LOG_ID, 3, "система готова для прийому повідомлень");
-            while (true) {
-                java.net.Socket inSocket = RibbonServSocket.accept();
-                if ((!inSocket.getInetAddress().getHostAddress().equals("127.0.0.1") && RibbonServer.NETWORK_ALLOW_REMOTE == false) || SessionManager.checkConnectionLimit() == true) {
-                    inSocket.close();
-                } else {
-                    SessionManager.createNewSession(inSocket);
+            if (NETWORK_CONTROL_PORT > 0) {
+                startControlListener();
+            }
+            if (NETWORK_ENGINE.equals("nio")) {
+                SessionReactor.init(NETWORK_NIO_LOOPS, NETWORK_NIO_WORKERS);
+                java.nio.channels.ServerSocketChannel RibbonServChannel = java.nio.channels.ServerSocketChannel.open();
+                RibbonServChannel.socket().bind(new java.net.InetSocketAddress(NETWORK_PORT), NETWORK_ACCEPT_BACKLOG);
+                logAppend(LOG_ID, 3, "система готова для прийому повідомлень (nio)");
+                while (true) {
+                    java.nio.channels.SocketChannel inChannel = RibbonServChannel.accept();
+                    if (isConnectionRejected(inChannel.socket())) {
+                        inChannel.close();
+                    } else {
+                        SessionReactor.register(inChannel);
+                    }
+                }
+            } else {
+                java.net.ServerSocket RibbonServSocket = new java.net.ServerSocket(NETWORK_PORT, NETWORK_ACCEPT_BACKLOG);
+                logAppend(LOG_ID, 3, "система готова для прийому повідомлень");
+                while (true) {
+                    java.net.Socket inSocket = RibbonServSocket.accept();
+                    if (isConnectionRejected(inSocket)) {
+                        inSocket.close();
+                    } else {
+                        SessionManager.createNewSession(inSocket);
+                    }
                 }
             }
         } catch (java.io.IOException ex) {
@@ -450,6 +616,61 @@ public class RibbonServer {
         }
     }
     
+    /**
+     * Start listener of control port in separate thread.
+     * <p>Control sessions are served by own threads and have own connection 
+     * limit, so administrator may connect when main port is overloaded.</p>
+     * @throws java.io.IOException if port can't be opened;
+     * @since RibbonServer a3
+     */
+    private static void startControlListener() throws java.io.IOException {
+        final java.net.ServerSocket ControlServSocket = new java.net.ServerSocket(NETWORK_CONTROL_PORT, NETWORK_ACCEPT_BACKLOG);
+        Thread listenerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        java.net.Socket inSocket = ControlServSocket.accept();
+                        if (isRemoteRejected(inSocket) || !SessionManager.reserveControlConnection()) {
+                            inSocket.close();
+                        } else {
+                            SessionManager.createNewControlSession(inSocket);
+                        }
+                    } catch (java.io.IOException ex) {
+                        logAppend(LOG_ID, 1, "помилка прийому з'єднання на порті керування");
+                    }
+                }
+            }
+        }, "ribbon-control-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        logAppend(LOG_ID, 3, "порт керування відкрито (" + NETWORK_CONTROL_PORT + ")");
+    }
+    
+    /**
+     * Check if accepted connection should be closed.<br>
+     * Takes token of address rate limit and reserves connection slot if connection is allowed.
+     * @param inSocket accepted socket;
+     * @return true if connection is not allowed;
+     * @since RibbonServer a3
+     */
+    private static Boolean isConnectionRejected(java.net.Socket inSocket) {
+        if (isRemoteRejected(inSocket) || !AdmissionControl.allowConnection(inSocket.getInetAddress())) {
+            return true;
+        }
+        return !SessionManager.reserveConnection();
+    }
+    
+    /**
+     * Check if connection came from other host while remote access is disabled.
+     * @param inSocket accepted socket;
+     * @return true if connection is not allowed;
+     * @since RibbonServer a3
+     */
+    private static Boolean isRemoteRejected(java.net.Socket inSocket) {
+        return !inSocket.getInetAddress().getHostAddress().equals("127.0.0.1") && RibbonServer.NETWORK_ALLOW_REMOTE == false;
+    }
+    
     /**
      * Create Ribbon log file if it doesn't exist.
      * @since RibbonServer a1
@@ -500,7 +721,7 @@ public class RibbonServer {
         String compiledMessage = getCurrentDate() + " ["+ component + "] " + typeStr + ">> '" + message + "';";
         System.out.println(compiledMessage);
         if (CONTROL_IS_PRESENT == true) {
-            SessionManager.broadcast(compiledMessage, RibbonProtocol.CONNECTION_TYPES.CONTROL);
+            SessionManager.streamLog(compiledMessage);
         }
         if (logFile != null) {
             try (java.io.FileWriter logWriter = new java.io.FileWriter(logFile, true)) {
@@ -562,6 +783,28 @@ public class RibbonServer {
             RibbonServer.NETWORK_ALLOW_REMOTE = true;
         }
         NETWORK_MAX_CONNECTIONS = Integer.valueOf(mainConfig.getProperty("networking_max_connections"));
+        NETWORK_ENGINE = mainConfig.getProperty("networking_engine", "thread");
+        NETWORK_THREAD_MODE = mainConfig.getProperty("networking_thread_mode", "platform");
+        NETWORK_OUT_QUEUE_SIZE = Integer.valueOf(mainConfig.getProperty("networking_out_queue_size", "1000"));
+        NETWORK_SLOW_THRESHOLD = Integer.valueOf(mainConfig.getProperty("networking_slow_threshold", String.valueOf(NETWORK_OUT_QUEUE_SIZE)));
+        NETWORK_SLOW_POLICY = mainConfig.getProperty("networking_slow_policy", "mark");
+        NETWORK_BROADCAST_WINDOW = Integer.valueOf(mainConfig.getProperty("networking_broadcast_window", "0"));
+        NETWORK_BROADCAST_BATCH = Integer.valueOf(mainConfig.getProperty("networking_broadcast_batch", "256"));
+        NETWORK_NIO_LOOPS = Integer.valueOf(mainConfig.getProperty("networking_nio_loops", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        NETWORK_NIO_WORKERS = Integer.valueOf(mainConfig.getProperty("networking_nio_workers", String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+        NETWORK_PIPELINE_DEPTH = Integer.valueOf(mainConfig.getProperty("networking_pipeline_depth", "16"));
+        NETWORK_PIPELINE_WORKERS = Integer.valueOf(mainConfig.getProperty("networking_pipeline_workers", String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+        NETWORK_IDLE_TIMEOUT = Integer.valueOf(mainConfig.getProperty("networking_idle_timeout", "0"));
+        NETWORK_LOGIN_TIMEOUT = Integer.valueOf(mainConfig.getProperty("networking_login_timeout", "0"));
+        NETWORK_HEARTBEAT_INTERVAL = Integer.valueOf(mainConfig.getProperty("networking_heartbeat_interval", "0"));
+        NETWORK_CONTROL_PORT = Integer.valueOf(mainConfig.getProperty("networking_control_port", "0"));
+        NETWORK_CONTROL_MAX_CONNECTIONS = Integer.valueOf(mainConfig.getProperty("networking_control_max_connections", "4"));
+        NETWORK_CONTROL_LOG_QUEUE = Integer.valueOf(mainConfig.getProperty("networking_control_log_queue", "1000"));
+        NETWORK_ACCEPT_BACKLOG = Integer.valueOf(mainConfig.getProperty("networking_accept_backlog", "50"));
+        NETWORK_CONNECT_RATE = Integer.valueOf(mainConfig.getProperty("networking_connect_rate", "0"));
+        NETWORK_CONNECT_BURST = Integer.valueOf(mainConfig.getProperty("networking_connect_burst", "10"));
+        NETWORK_COMMAND_RATE = Integer.valueOf(mainConfig.getProperty("networking_command_rate", "0"));
+        NETWORK_COMMAND_BURST = Integer.valueOf(mainConfig.getProperty("networking_command_burst", "100"));
         
         //Setting cache variables
         //CACHE_ENABLED = mainConfig.getProperty("cache_enabled").equals("0") ? false : true;
@@ -583,6 +826,14 @@ public class RibbonServer {
         //Setting optional variables
         OPT_POST_INIT = mainConfig.getProperty("opt_post_init").equals("0") ? false : true;
         OPT_CREATE_REPORTS = mainConfig.getProperty("opt_create_reports").equals("0") ? false : true;
+        OPT_READ_WORKERS = Integer.valueOf(mainConfig.getProperty("opt_read_workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        OPT_INDEX_STORE = mainConfig.getProperty("opt_index_store", "objects");
+        
+        //Use object store if index store is unknown (message index is loaded before validation)
+        if (!OPT_INDEX_STORE.equals("objects") && !OPT_INDEX_STORE.equals("columnar")) {
+            logAppend(LOG_ID, 1, "Невірне налаштування сховища індексу (" + OPT_INDEX_STORE + ")");
+            OPT_INDEX_STORE = "objects";
+        }
         
         //Setting IO control varibales
         IO_ENABLED = mainConfig.getProperty("io_enabled").equals("0") ? false : true;
@@ -614,6 +865,10 @@ public class RibbonServer {
                 + "Мережевий порт:" + RibbonServer.NETWORK_PORT + "\n"
                 + (RibbonServer.NETWORK_MAX_CONNECTIONS == -1 ? "Без ліміту з'єднань." : "Кількість з'єднань: " 
                 + RibbonServer.NETWORK_MAX_CONNECTIONS) + "\n" : "Мережевий доступ заблоковано.\n")
+                + (RibbonServer.NETWORK_CONTROL_PORT > 0 ? "Порт керування: " + RibbonServer.NETWORK_CONTROL_PORT 
+                + " (з'єднань: " + RibbonServer.NETWORK_CONTROL_MAX_CONNECTIONS + ")\n" : "")
+                + "Мережевий рушій: " + RibbonServer.NETWORK_ENGINE 
+                + (RibbonServer.NETWORK_ENGINE.equals("nio") ? "" : " (" + RibbonServer.NETWORK_THREAD_MODE + ")") + "\n"
                 + (RibbonServer.ACCESS_ALLOW_MULTIPLIE_LOGIN ? "Дозволена неодноразова авторізація.\n" : "Неодноразова авторізація заблокована.\n")
                 + "Маска для системної категорії доступу ALL:" + RibbonServer.ACCESS_ALL_MASK + "\n"
                 + (RibbonServer.ACCESS_ALLOW_SESSIONS ? "Сесії дозволені.\nКількість споживань сесії:" + RibbonServer.ACCESS_SESSION_MAX_COUNT + "\n" : "")
@@ -662,6 +917,102 @@ public class RibbonServer {
             ACCESS_ALLOW_SESSIONS = false;
         }
         
+        //Use thread engine if engine name is unknown
+        if (!NETWORK_ENGINE.equals("thread") && !NETWORK_ENGINE.equals("nio")) {
+            logAppend(LOG_ID, 1, "Невірне налаштування мережевого рушія (" + NETWORK_ENGINE + ")");
+            NETWORK_ENGINE = "thread";
+        }
+
+        //Use platform threads if thread mode is unknown
+        if (!NETWORK_THREAD_MODE.equals("platform") && !NETWORK_THREAD_MODE.equals("virtual")) {
+            logAppend(LOG_ID, 1, "Невірне налаштування режиму потоків (" + NETWORK_THREAD_MODE + ")");
+            NETWORK_THREAD_MODE = "platform";
+        }
+
+        //Reactor needs at least one selector loop and one worker
+        if (NETWORK_NIO_LOOPS <= 0 || NETWORK_NIO_WORKERS <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування реактора (" + NETWORK_NIO_LOOPS + "/" + NETWORK_NIO_WORKERS + ")");
+            NETWORK_NIO_LOOPS = Runtime.getRuntime().availableProcessors();
+            NETWORK_NIO_WORKERS = Runtime.getRuntime().availableProcessors() * 2;
+        }
+
+        //Outbound queue can't be empty
+        if (NETWORK_OUT_QUEUE_SIZE <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування вихідної черги (" + NETWORK_OUT_QUEUE_SIZE + ")");
+            NETWORK_OUT_QUEUE_SIZE = 1000;
+        }
+        
+        //Slow consumer threshold can't be bigger than outbound queue
+        if (NETWORK_SLOW_THRESHOLD > NETWORK_OUT_QUEUE_SIZE || NETWORK_SLOW_THRESHOLD <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування порогу черги (" + NETWORK_SLOW_THRESHOLD + ")");
+            NETWORK_SLOW_THRESHOLD = NETWORK_OUT_QUEUE_SIZE;
+        }
+
+        //Mark slow consumers if policy is unknown
+        if (!NETWORK_SLOW_POLICY.equals("mark") && !NETWORK_SLOW_POLICY.equals("disconnect")) {
+            logAppend(LOG_ID, 1, "Невірне налаштування політики повільних клієнтів (" + NETWORK_SLOW_POLICY + ")");
+            NETWORK_SLOW_POLICY = "mark";
+        }
+        
+        //Broadcast batching can't use negative window or empty batch
+        if (NETWORK_BROADCAST_WINDOW < 0 || NETWORK_BROADCAST_BATCH <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування пакетів розсилки (" + NETWORK_BROADCAST_WINDOW + "/" + NETWORK_BROADCAST_BATCH + ")");
+            NETWORK_BROADCAST_WINDOW = 0;
+            NETWORK_BROADCAST_BATCH = 256;
+        }
+        
+        //Turn off pipelining if depth or pool size is incorrect
+        if (NETWORK_PIPELINE_DEPTH < 0 || NETWORK_PIPELINE_WORKERS <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування конвеєра команд (" + NETWORK_PIPELINE_DEPTH + "/" + NETWORK_PIPELINE_WORKERS + ")");
+            NETWORK_PIPELINE_DEPTH = 0;
+            NETWORK_PIPELINE_WORKERS = 1;
+        }
+        
+        //Turn off session reaper checks with negative time
+        if (NETWORK_IDLE_TIMEOUT < 0 || NETWORK_LOGIN_TIMEOUT < 0 || NETWORK_HEARTBEAT_INTERVAL < 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування тайм-аутів сесій (" + NETWORK_IDLE_TIMEOUT + "/" + NETWORK_LOGIN_TIMEOUT + "/" + NETWORK_HEARTBEAT_INTERVAL + ")");
+            NETWORK_IDLE_TIMEOUT = Math.max(NETWORK_IDLE_TIMEOUT, 0);
+            NETWORK_LOGIN_TIMEOUT = Math.max(NETWORK_LOGIN_TIMEOUT, 0);
+            NETWORK_HEARTBEAT_INTERVAL = Math.max(NETWORK_HEARTBEAT_INTERVAL, 0);
+        }
+        
+        //Turn off control port if it's incorrect or matches main port
+        if (NETWORK_CONTROL_PORT < 0 || NETWORK_CONTROL_PORT.equals(NETWORK_PORT) || NETWORK_CONTROL_MAX_CONNECTIONS <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування порту керування (" + NETWORK_CONTROL_PORT + "/" + NETWORK_CONTROL_MAX_CONNECTIONS + ")");
+            NETWORK_CONTROL_PORT = 0;
+            NETWORK_CONTROL_MAX_CONNECTIONS = 4;
+        }
+        
+        //Log queue for control connections can't be empty
+        if (NETWORK_CONTROL_LOG_QUEUE <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування черги журналу (" + NETWORK_CONTROL_LOG_QUEUE + ")");
+            NETWORK_CONTROL_LOG_QUEUE = 1000;
+        }
+        
+        //Reset incorrect backlog of listening sockets
+        if (NETWORK_ACCEPT_BACKLOG <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування черги з'єднань (" + NETWORK_ACCEPT_BACKLOG + ")");
+            NETWORK_ACCEPT_BACKLOG = 50;
+        }
+        
+        //Turn off rate limits with negative rate or empty burst
+        if (NETWORK_CONNECT_RATE < 0 || NETWORK_CONNECT_BURST <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування ліміту з'єднань (" + NETWORK_CONNECT_RATE + "/" + NETWORK_CONNECT_BURST + ")");
+            NETWORK_CONNECT_RATE = 0;
+            NETWORK_CONNECT_BURST = 10;
+        }
+        if (NETWORK_COMMAND_RATE < 0 || NETWORK_COMMAND_BURST <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування ліміту команд (" + NETWORK_COMMAND_RATE + "/" + NETWORK_COMMAND_BURST + ")");
+            NETWORK_COMMAND_RATE = 0;
+            NETWORK_COMMAND_BURST = 100;
+        }
+        
+        //Read message files in one thread if pool size is incorrect
+        if (OPT_READ_WORKERS <= 0) {
+            logAppend(LOG_ID, 1, "Невірне налаштування потоків читання (" + OPT_READ_WORKERS + ")");
+            OPT_READ_WORKERS = 1;
+        }
+
         //EXIT if group doesn't exist
         if (ACCESS_ALLOW_REMOTE && !AccessHandler.isGroupExisted(ACCESS_REMOTE_GROUP)) {
             logAppend(LOG_ID, 0, "помилка видаленого режиму: групи " + ACCESS_REMOTE_GROUP + " не існує");
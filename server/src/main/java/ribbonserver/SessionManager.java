@@ -31,10 +31,54 @@ public final class SessionManager {
     private static String LOG_ID = "СЕСІЯ";
     
     /**
-     * Arraylist with active network sessions.
+     * Set with active network sessions.
      * @since RibbonServer a1
      */
-    private static java.util.ArrayList<SessionManager.SessionThread> sessionsStore = new java.util.ArrayList<>();
+    private static final java.util.Set<SessionManager.Session> sessionsStore = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Active sessions indexed by connection type.
+     * @since RibbonServer a3
+     */
+    private static final java.util.EnumMap<RibbonProtocol.CONNECTION_TYPES, java.util.Set<SessionManager.Session>> sessionsByType = new java.util.EnumMap<>(RibbonProtocol.CONNECTION_TYPES.class);
+    
+    /**
+     * Active sessions indexed by user name.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ConcurrentHashMap<String, java.util.Set<SessionManager.Session>> sessionsByUser = new java.util.concurrent.ConcurrentHashMap<>();
+    
+    /**
+     * Sessions without directory subscription indexed by connection type 
+     * (they receive every broadcast of their type).
+     * @since RibbonServer a3
+     */
+    private static final java.util.EnumMap<RibbonProtocol.CONNECTION_TYPES, java.util.Set<SessionManager.Session>> unscopedByType = new java.util.EnumMap<>(RibbonProtocol.CONNECTION_TYPES.class);
+    
+    /**
+     * Broadcast routing table: directory name to subscribed sessions.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ConcurrentHashMap<String, java.util.Set<SessionManager.Session>> sessionsByDir = new java.util.concurrent.ConcurrentHashMap<>();
+    
+    /**
+     * Count of opened and reserved connections.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.atomic.AtomicInteger connectionCount = new java.util.concurrent.atomic.AtomicInteger();
+    
+    /**
+     * Count of opened connections of control port.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.atomic.AtomicInteger controlConnectionCount = new java.util.concurrent.atomic.AtomicInteger();
+    
+    static {
+        for (RibbonProtocol.CONNECTION_TYPES currType : RibbonProtocol.CONNECTION_TYPES.values()) {
+            sessionsByType.put(currType, java.util.concurrent.ConcurrentHashMap.<SessionManager.Session>newKeySet());
+            unscopedByType.put(currType, java.util.concurrent.ConcurrentHashMap.<SessionManager.Session>newKeySet());
+        }
+    }
     
     /**
      * List with stored session entries.
@@ -115,10 +159,14 @@ public final class SessionManager {
     }
     
     /**
-     * Single client session class.
-     * @since RibbonServer a1
+     * Abstract network session.
+     * 
+     * <p>Holds session state which is shared by all network engines 
+     * and the common command processing step. Engines should provide 
+     * only transport specific methods.</p>
+     * @since RibbonServer a3
      */
-    public static class SessionThread extends Thread {
+    public static abstract class Session {
         
         /**
          * User name of this session.
@@ -142,30 +190,440 @@ public final class SessionManager {
         public Boolean isAlive = false;
         
         /**
-         * Session network socket.
+         * Session was accepted by control port and may be only <code>CONTROL</code> connection.
+         * @since RibbonServer a3
          */
-        private java.net.Socket SessionSocket;
+        public Boolean FROM_CONTROL_PORT = false;
         
         /**
-         * Input stream from client.
+         * Lock for session output.
+         * 
+         * <p>Explicit lock is used instead of monitor because command may block 
+         * on socket while holding it, which would pin carrier of virtual thread.</p>
+         * @since RibbonServer a2
+         */
+        protected final java.util.concurrent.locks.ReentrantLock outputLock = new java.util.concurrent.locks.ReentrantLock();
+        
+        /**
+         * Protocol handler, parser and executor.
+         */
+        protected RibbonProtocol ProtocolHandler;
+        
+        /**
+         * User name under which session is indexed.
+         * @since RibbonServer a3
+         */
+        private String indexedUser;
+        
+        /**
+         * Directories which session subscribed to (null if session receives all broadcasts).
+         * @since RibbonServer a3
+         */
+        private java.util.Set<String> subscribedDirs;
+        
+        /**
+         * Bounded queue of outbound broadcast messages.
+         * <p>Linked queue doesn't allocate its capacity for idle sessions.</p>
+         * @since RibbonServer a3
+         */
+        private final java.util.concurrent.LinkedBlockingQueue<String> outQueue = new java.util.concurrent.LinkedBlockingQueue<>(RibbonServer.NETWORK_OUT_QUEUE_SIZE);
+        
+        /**
+         * Drain task of outbound queue is scheduled.
+         * @since RibbonServer a3
+         */
+        private final java.util.concurrent.atomic.AtomicBoolean drainScheduled = new java.util.concurrent.atomic.AtomicBoolean(false);
+        
+        /**
+         * Count of broadcast messages which were dropped for this session.
+         * @since RibbonServer a3
+         */
+        public final java.util.concurrent.atomic.AtomicLong DROPPED_COUNT = new java.util.concurrent.atomic.AtomicLong();
+        
+        /**
+         * Maximum observed depth of outbound queue.
+         * @since RibbonServer a3
+         */
+        public volatile Integer MAX_QUEUE_DEPTH = 0;
+        
+        /**
+         * Session fell behind slow consumer threshold.
+         * @since RibbonServer a3
+         */
+        public final java.util.concurrent.atomic.AtomicBoolean IS_SLOW = new java.util.concurrent.atomic.AtomicBoolean(false);
+        
+        /**
+         * Command rate bucket of session address (created on first command).
+         * @since RibbonServer a3
+         */
+        volatile AdmissionControl.TokenBucket commandBucket;
+        
+        /**
+         * Time of session creation (in nanoseconds).
+         * @since RibbonServer a3
+         */
+        private final long createdTime = System.nanoTime();
+        
+        /**
+         * Time of last incoming data (in nanoseconds).
+         * @since RibbonServer a3
+         */
+        private volatile long lastInputTime = createdTime;
+        
+        /**
+         * Time of last heartbeat (in nanoseconds).
+         * @since RibbonServer a3
          */
-        public java.io.BufferedReader inStream;
+        private volatile long lastHeartbeatTime = createdTime;
         
         /**
-         * Output writer to client.
+         * Read next line from the peer.<br>
+         * <b>WARNING!</b> this method is used by commandlets which grab socket control.
+         * @return line from the peer or null if connection is closed;
+         * @throws java.io.IOException 
          */
-        private java.io.PrintWriter outStream;
+        public abstract String readLine() throws java.io.IOException;
         
         /**
-         * Lock object for <code>outStream</code>.
+         * Read frame payload of given length from the peer and decode it.<br>
+         * <b>WARNING!</b> this method is used by commandlets which grab socket control.
+         * @param length length of payload in bytes;
+         * @return decoded payload;
+         * @throws java.io.IOException if connection is closed before end of frame;
+         * @since RibbonServer a3
+         */
+        public abstract String readFrame(Integer length) throws java.io.IOException;
+        
+        /**
+         * Set reader encoding.
+         * @param charsetName name of the charset;
          * @since RibbonServer a2
          */
-        private final Object outputLock = new Object();
+        public abstract void setReaderEncoding(String charsetName);
         
         /**
-         * Protocol handler, parser and executor.
+         * Set framing of message bodies which was accepted by init command.
+         * <p>Blocking sessions read bodies by protocol itself, 
+         * so only sessions which split input in advance need it.</p>
+         * @param framed bodies are sent as frames;
+         * @since RibbonServer a3
+         */
+        public void setFramedInput(Boolean framed) {
+        }
+        
+        /**
+         * Send message to this session peer.
+         * @param message message to send;
+         */
+        public void printLnToPeer(String message) {
+            outputLock.lock();
+            try {
+                this.appendLnToPeer(message);
+                this.flushPeer();
+            } finally {
+                outputLock.unlock();
+            }
+        }
+        
+        /**
+         * Put message to output buffer of this session peer.<br>
+         * Message will be sent on next flush or when buffer is full.
+         * @param message message to send;
+         * @since RibbonServer a3
+         */
+        public abstract void appendLnToPeer(String message);
+        
+        /**
+         * Put raw bytes to output buffer of this session peer without any conversion.
+         * @param raw bytes to send;
+         * @since RibbonServer a3
+         */
+        public abstract void writeToPeer(byte[] raw);
+        
+        /**
+         * Send all buffered output to this session peer.
+         * @since RibbonServer a3
+         */
+        public abstract void flushPeer();
+        
+        /**
+         * Put content of the file to output of this session peer without any conversion.
+         * <p>Session closes the file after write. If file became shorter than 
+         * given length, rest of the length is filled by line separators.</p>
+         * @param file file to send;
+         * @param length count of bytes to send;
+         * @since RibbonServer a3
+         */
+        public abstract void transferToPeer(java.nio.channels.FileChannel file, long length);
+        
+        /**
+         * Get charset of lines which are sent to this session peer.
+         * @return output charset;
+         * @since RibbonServer a3
+         */
+        public abstract java.nio.charset.Charset getOutputCharset();
+        
+        /**
+         * Switch output of this session to deflate stream.<br>
+         * Every write is finished by sync flush, so peer may decompress answers 
+         * as they arrive.
+         * @since RibbonServer a3
+         */
+        public abstract void enableCompression();
+        
+        /**
+         * Close connection of this session from other thread.
+         * @since RibbonServer a3
+         */
+        public abstract void closeConnection();
+        
+        /**
+         * Get address of the peer.
+         * @return ip address string;
+         */
+        public abstract String getPeerAddress();
+        
+        /**
+         * Get host name of the peer.
+         * @return host name string;
+         */
+        public abstract String getPeerHostName();
+        
+        /**
+         * Set name of session.
+         * @since RibbonServer a2
+         */
+        public void setSessionName() {
+            this.SESSION_TIP = "[" + this.USER_NAME + "] на " + this.getPeerHostName();
+        }
+        
+        /**
+         * Get current depth of outbound queue.
+         * @return count of queued messages;
+         * @since RibbonServer a3
+         */
+        public Integer getQueueDepth() {
+            return this.outQueue.size();
+        }
+        
+        /**
+         * Find out if peer output shouldn't take more data for now.
+         * <p>Blocking sockets hold writers by themselves, so this check 
+         * is needed only by sessions which buffer output without blocking.</p>
+         * @return true if writing should wait;
+         * @since RibbonServer a3
+         */
+        protected Boolean isOutputBlocked() {
+            return false;
+        }
+        
+        /**
+         * Schedule write of outbound queue if it's not empty.
+         * @since RibbonServer a3
+         */
+        protected void resumeOutbound() {
+            if (!this.outQueue.isEmpty() && this.drainScheduled.compareAndSet(false, true)) {
+                outboundExecutor.execute(this.drainTask);
+            }
+        }
+        
+        /**
+         * Mark arrival of data from the peer.
+         * @since RibbonServer a3
+         */
+        protected void touchInput() {
+            this.lastInputTime = System.nanoTime();
+        }
+        
+        /**
+         * Put message to outbound queue without blocking of caller.
+         * @param message message to send;
+         * @since RibbonServer a3
+         */
+        public void enqueueToPeer(String message) {
+            if (!this.isAlive) {
+                return;
+            }
+            if (!this.outQueue.offer(message)) {
+                this.DROPPED_COUNT.incrementAndGet();
+            }
+            Integer depth = this.outQueue.size();
+            if (depth > this.MAX_QUEUE_DEPTH) {
+                this.MAX_QUEUE_DEPTH = depth;
+            }
+            if (depth >= RibbonServer.NETWORK_SLOW_THRESHOLD && this.IS_SLOW.compareAndSet(false, true)) {
+                if (RibbonServer.NETWORK_SLOW_POLICY.equals("disconnect")) {
+                    slowDisconnects.incrementAndGet();
+                    RibbonServer.logAppend(LOG_ID, 2, "сесію " + this.SESSION_TIP + " від'єднано через переповнення черги (" + depth + ")");
+                    this.outQueue.clear();
+                    this.closeConnection();
+                    return;
+                } else {
+                    RibbonServer.logAppend(LOG_ID, 2, "сесія " + this.SESSION_TIP + " не встигає отримувати повідомлення (" + depth + ")");
+                }
+            }
+            if (this.drainScheduled.compareAndSet(false, true)) {
+                if (RibbonServer.NETWORK_BROADCAST_WINDOW > 0 && depth < RibbonServer.NETWORK_BROADCAST_BATCH) {
+                    this.drainDelayed.set(true);
+                    broadcastTimer.schedule(this.delayedDrainTask, RibbonServer.NETWORK_BROADCAST_WINDOW, java.util.concurrent.TimeUnit.MILLISECONDS);
+                } else {
+                    outboundExecutor.execute(this.drainTask);
+                }
+            } else if (depth >= RibbonServer.NETWORK_BROADCAST_BATCH && this.drainDelayed.compareAndSet(true, false)) {
+                outboundExecutor.execute(this.drainTask);
+            }
+        }
+        
+        /**
+         * Delayed write is waiting for the end of broadcast window.
+         * @since RibbonServer a3
+         */
+        private final java.util.concurrent.atomic.AtomicBoolean drainDelayed = new java.util.concurrent.atomic.AtomicBoolean(false);
+        
+        /**
+         * Task which writes outbound queue.
+         * @since RibbonServer a3
+         */
+        private final Runnable drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drainOutbound();
+            }
+        };
+        
+        /**
+         * Task which passes outbound queue to writers after broadcast window.
+         * @since RibbonServer a3
+         */
+        private final Runnable delayedDrainTask = new Runnable() {
+            @Override
+            public void run() {
+                if (drainDelayed.compareAndSet(true, false)) {
+                    outboundExecutor.execute(drainTask);
+                }
+            }
+        };
+        
+        /**
+         * Write queued messages to the peer.
+         * <p>Queued messages are coalesced into multi-line writes 
+         * up to <code>NETWORK_BROADCAST_BATCH</code> lines each. 
+         * Drain stops while peer output is blocked, so messages stay 
+         * in bounded queue and count to slow consumer threshold.</p>
+         * @since RibbonServer a3
+         */
+        private void drainOutbound() {
+            try {
+                StringBuilder batchBuf = new StringBuilder();
+                Integer batchLines = 0;
+                String message;
+                while (!this.isOutputBlocked() && (message = this.outQueue.poll()) != null) {
+                    if (batchLines > 0) {
+                        batchBuf.append("\n");
+                    }
+                    batchBuf.append(message);
+                    if (++batchLines >= RibbonServer.NETWORK_BROADCAST_BATCH) {
+                        this.printLnToPeer(batchBuf.toString());
+                        batchBuf.setLength(0);
+                        batchLines = 0;
+                    }
+                }
+                if (batchLines > 0) {
+                    this.printLnToPeer(batchBuf.toString());
+                }
+                if (this.outQueue.isEmpty()) {
+                    this.IS_SLOW.set(false);
+                }
+            } finally {
+                this.drainScheduled.set(false);
+            }
+            if (!this.isOutputBlocked()) {
+                this.resumeOutbound();
+            }
+        }
+        
+        /**
+         * Process single command line from the peer and send answer back.
+         * <p>In pipelined mode read-only tagged commands are executed concurrently, 
+         * any other command waits for completion of them.</p>
+         * @param inputLine line from the peer;
+         */
+        protected void processLine(String inputLine) {
+            String requestId = null;
+            if (this.ProtocolHandler.IS_PIPELINED) {
+                String[] tagged = RibbonProtocol.splitTagged(inputLine);
+                if (tagged != null) {
+                    if (this.ProtocolHandler.submitTagged(tagged[0], tagged[1])) {
+                        return;
+                    }
+                    requestId = tagged[0];
+                    inputLine = tagged[1];
+                }
+            }
+            this.ProtocolHandler.awaitPipeline();
+            outputLock.lock();
+            try {
+                if (requestId != null) {
+                    this.ProtocolHandler.beginCapture();
+                }
+                String answer = this.ProtocolHandler.process(inputLine);
+                if (answer.equals("COMMIT_CLOSE:")) {
+                    isAlive = false;
+                }
+                this.appendLnToPeer(requestId != null ? this.ProtocolHandler.endCapture(requestId, answer) : answer);
+                if (this.ProtocolHandler.FRAME_PAYLOAD != null) {
+                    this.writeToPeer(this.ProtocolHandler.FRAME_PAYLOAD);
+                    this.ProtocolHandler.FRAME_PAYLOAD = null;
+                }
+                if (this.ProtocolHandler.FRAME_FILE != null) {
+                    this.transferToPeer(this.ProtocolHandler.FRAME_FILE, this.ProtocolHandler.FRAME_FILE_LENGTH);
+                    this.ProtocolHandler.FRAME_FILE = null;
+                    this.ProtocolHandler.FRAME_FILE_LENGTH = null;
+                }
+                this.flushPeer();
+                if (this.ProtocolHandler.START_COMPRESSION) {
+                    this.enableCompression();
+                    this.ProtocolHandler.START_COMPRESSION = false;
+                }
+            } finally {
+                this.ProtocolHandler.resetCapture();
+                outputLock.unlock();
+            }
+            if (this.ProtocolHandler.BROADCAST_TAIL != null) {
+                broadcast(this.ProtocolHandler.BROADCAST_TAIL, this.ProtocolHandler.BROADCAST_TYPE, this.ProtocolHandler.BROADCAST_DIRS);
+                this.ProtocolHandler.BROADCAST_TAIL = null;
+                this.ProtocolHandler.BROADCAST_TYPE = null;
+                this.ProtocolHandler.BROADCAST_DIRS = null;
+            }
+        }
+    }
+    
+    /**
+     * Single client session class.
+     * @since RibbonServer a1
+     */
+    public static class SessionThread extends Session implements Runnable {
+        
+        /**
+         * Session network socket.
+         */
+        private java.net.Socket SessionSocket;
+        
+        /**
+         * Input stream from client.
          */
-        private RibbonProtocol ProtocolHandler;
+        private SessionInput inStream;
+        
+        /**
+         * Charset of input lines and frames.
+         * @since RibbonServer a3
+         */
+        private java.nio.charset.Charset inputCharset = java.nio.charset.StandardCharsets.UTF_8;
+        
+        /**
+         * Buffered output to client.
+         */
+        private SessionOutput outStream;
         
         /**
          * Default constructor.
@@ -174,8 +632,9 @@ public final class SessionManager {
         SessionThread(java.net.Socket givenSocket) {
             SessionSocket = givenSocket;
             try {
-                inStream = new java.io.BufferedReader(new java.io.InputStreamReader(SessionSocket.getInputStream(), "UTF-8"));
-                outStream = new java.io.PrintWriter(SessionSocket.getOutputStream(), true);
+                SessionSocket.setTcpNoDelay(true);
+                inStream = new SessionInput(SessionSocket.getInputStream());
+                outStream = new SessionOutput(SessionSocket.getOutputStream(), java.nio.charset.Charset.defaultCharset());
             } catch (java.io.IOException ex) {
                 RibbonServer.logAppend(LOG_ID, 1, "неможливо створити потоки для мережевого сокета (" + SessionSocket.getInetAddress().getHostAddress() + ")");
             } finally {
@@ -187,23 +646,12 @@ public final class SessionManager {
         
         @Override
         public void run() {
-            String inputLine, outputLine;
+            String inputLine;
             this.setSessionName();
             try {
                 while (this.isAlive == true) {
-                    inputLine = inStream.readLine();
-                    synchronized (outputLock) {
-                        String answer = this.ProtocolHandler.process(inputLine);
-                        if (answer.equals("COMMIT_CLOSE:")) {
-                            isAlive = false;
-                        }
-                        this.outStream.println(answer);
-                    }
-                    if (this.ProtocolHandler.BROADCAST_TAIL != null) {
-                        broadcast(this.ProtocolHandler.BROADCAST_TAIL, this.ProtocolHandler.BROADCAST_TYPE);
-                        this.ProtocolHandler.BROADCAST_TAIL = null;
-                        this.ProtocolHandler.BROADCAST_TYPE = null;
-                    }
+                    inputLine = this.readLine();
+                    this.processLine(inputLine);
                 }
                 this.inStream.close();
                 this.outStream.close();
@@ -212,68 +660,744 @@ public final class SessionManager {
                 this.isAlive = false;
                 SessionManager.closeSession(this);
             } catch (java.lang.NullPointerException ex) {
-                RibbonServer.logAppend(LOG_ID, 1, "з'єднання аварійно разірване!");
+                if (this.isAlive) {
+                    RibbonServer.logAppend(LOG_ID, 1, "з'єднання аварійно разірване!");
+                }
                 this.isAlive = false;
                 SessionManager.closeSession(this);
             } catch (java.io.IOException ex) {
-                RibbonServer.logAppend(LOG_ID, 1, "неможливо прочитати дані з сокету (" + SessionSocket.getInetAddress().getHostAddress() + ")");
+                if (this.isAlive) {
+                    RibbonServer.logAppend(LOG_ID, 1, "неможливо прочитати дані з сокету (" + SessionSocket.getInetAddress().getHostAddress() + ")");
+                }
                 this.isAlive = false;
                 SessionManager.closeSession(this);
             }
         }
         
-        /**
-         * Set name of session thread.
-         * @since RibbonServer a2
-         */
-        public void setSessionName() {
-            this.SESSION_TIP = "[" + this.USER_NAME + "] на " + this.SessionSocket.getInetAddress().getHostName();
+        @Override
+        public String readLine() throws java.io.IOException {
+            String readed = this.inStream.readLine(this.inputCharset);
+            this.touchInput();
+            return readed;
         }
         
-        /**
-         * Set reader encoding.
-         * @since RibbonServer a2
-         */
+        @Override
+        public String readFrame(Integer length) throws java.io.IOException {
+            byte[] readed = this.inStream.readFully(length);
+            this.touchInput();
+            return new String(readed, this.inputCharset);
+        }
+        
+        @Override
         public void setReaderEncoding(String charsetName) {
             try {
-                this.inStream = new java.io.BufferedReader(new java.io.InputStreamReader(SessionSocket.getInputStream(), charsetName));
-            } catch (java.io.UnsupportedEncodingException ex) {
+                this.inputCharset = java.nio.charset.Charset.forName(charsetName);
+            } catch (IllegalArgumentException ex) {
                 RibbonServer.logAppend(LOG_ID, 1, "неможливо встановити кодову сторінку!");
-            } catch (java.io.IOException ex) {
-                RibbonServer.logAppend(LOG_ID, 1, "неможливо прочитати дані з сокету (" + SessionSocket.getInetAddress().getHostAddress() + ")");
             }
         }
         
-        /**
-         * Send message to this session peer.
-         * @param message message to send;
-         */
-        public void printLnToPeer(String message) {
-            synchronized (outputLock) {
-                outStream.println(message);
+        @Override
+        public void appendLnToPeer(String message) {
+            try {
+                outStream.printLn(message);
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо записати дані до сокету (" + this.getPeerAddress() + ")");
             }
         }
-    }
-    
-    /**
-     * Init session manager.
-     * @since RibbonServer a2
-     */
-    public static void init() {
-        SessionManager.sessionCookie = IndexReader.readSessionIndex();
-        RibbonServer.logAppend(LOG_ID, 3, "індекс сесій вдало завантажено");
-    }
-
-    /**
-     * Create new session and add it into session list;
-     * @param givenSocket socket to open session;
-     * @since RibbonServer a1
-     */
-    public static void createNewSession(java.net.Socket givenSocket) {
-        SessionManager.SessionThread createdThread = new SessionManager.SessionThread(givenSocket);
-        if (createdThread.isAlive) {
-            SessionManager.sessionsStore.add(createdThread);
-            createdThread.start();
+        
+        @Override
+        public void writeToPeer(byte[] raw) {
+            try {
+                outStream.write(raw);
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо записати дані до сокету (" + this.getPeerAddress() + ")");
+            }
+        }
+        
+        @Override
+        public void flushPeer() {
+            try {
+                outStream.flush();
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо записати дані до сокету (" + this.getPeerAddress() + ")");
+            }
+        }
+        
+        @Override
+        public void transferToPeer(java.nio.channels.FileChannel file, long length) {
+            try {
+                outStream.transferFrom(file, length);
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо записати дані до сокету (" + this.getPeerAddress() + ")");
+            } finally {
+                try {
+                    file.close();
+                } catch (java.io.IOException ex) {}
+            }
+        }
+        
+        @Override
+        public java.nio.charset.Charset getOutputCharset() {
+            return outStream.getCharset();
+        }
+        
+        @Override
+        public void enableCompression() {
+            outputLock.lock();
+            try {
+                outStream.setStream(new java.util.zip.DeflaterOutputStream(SessionSocket.getOutputStream(), true));
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо увімкнути стиснення (" + this.getPeerAddress() + ")");
+            } finally {
+                outputLock.unlock();
+            }
+        }
+        
+        @Override
+        public void closeConnection() {
+            this.isAlive = false;
+            try {
+                this.SessionSocket.close();
+            } catch (java.io.IOException ex) {}
+        }
+        
+        @Override
+        public String getPeerAddress() {
+            return this.SessionSocket.getInetAddress().getHostAddress();
+        }
+        
+        @Override
+        public String getPeerHostName() {
+            return this.SessionSocket.getInetAddress().getHostName();
+        }
+    }
+    
+    /**
+     * Byte level input of the session.
+     * 
+     * <p>Lines and frames are read from the same buffer, so frame 
+     * payload is copied in bulk and never passes through line scanning.</p>
+     * @since RibbonServer a3
+     */
+    public static class SessionInput {
+        
+        /**
+         * Underlying stream.
+         */
+        private final java.io.InputStream inStream;
+        
+        /**
+         * Read buffer.
+         */
+        private final byte[] buffer = new byte[8192];
+        
+        /**
+         * Position of next unread byte.
+         */
+        private int position = 0;
+        
+        /**
+         * Count of valid bytes in buffer.
+         */
+        private int limit = 0;
+        
+        /**
+         * Bytes of current line.
+         */
+        private final java.io.ByteArrayOutputStream lineBuffer = new java.io.ByteArrayOutputStream(256);
+        
+        /**
+         * Default constructor.
+         * @param givenStream stream to read;
+         */
+        SessionInput(java.io.InputStream givenStream) {
+            inStream = givenStream;
+        }
+        
+        /**
+         * Fill buffer from stream.
+         * @return false if stream is closed;
+         * @throws java.io.IOException 
+         */
+        private Boolean fill() throws java.io.IOException {
+            int readed = inStream.read(buffer);
+            if (readed == -1) {
+                return false;
+            }
+            position = 0;
+            limit = readed;
+            return true;
+        }
+        
+        /**
+         * Read line terminated by <code>\n</code> or <code>\r\n</code>.
+         * @param charset charset of the line;
+         * @return line or null if stream is closed;
+         * @throws java.io.IOException 
+         */
+        public String readLine(java.nio.charset.Charset charset) throws java.io.IOException {
+            lineBuffer.reset();
+            while (true) {
+                if (position == limit && !fill()) {
+                    if (lineBuffer.size() == 0) {
+                        return null;
+                    }
+                    break;
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                lineBuffer.write(buffer, start, position - start);
+                if (position < limit) {
+                    position++;
+                    break;
+                }
+            }
+            byte[] raw = lineBuffer.toByteArray();
+            int length = raw.length;
+            if (length > 0 && raw[length - 1] == '\r') {
+                length--;
+            }
+            return new String(raw, 0, length, charset);
+        }
+        
+        /**
+         * Read exactly given count of bytes.
+         * @param length count of bytes;
+         * @return readed bytes;
+         * @throws java.io.IOException if stream is closed before all bytes were readed;
+         */
+        public byte[] readFully(Integer length) throws java.io.IOException {
+            byte[] result = new byte[length];
+            int filled = Math.min(length, limit - position);
+            System.arraycopy(buffer, position, result, 0, filled);
+            position += filled;
+            while (filled < length) {
+                int readed = inStream.read(result, filled, length - filled);
+                if (readed == -1) {
+                    throw new java.io.EOFException();
+                }
+                filled += readed;
+            }
+            return result;
+        }
+        
+        /**
+         * Close underlying stream.
+         * @throws java.io.IOException 
+         */
+        public void close() throws java.io.IOException {
+            inStream.close();
+        }
+    }
+    
+    /**
+     * Byte level output of the session.
+     * 
+     * <p>Lines are encoded once into pooled buffer which goes to the stream 
+     * only on flush or when it's full, so big answer leaves server in few 
+     * writes instead of write per line. Buffer returns to the pool after 
+     * flush, so idle sessions don't hold it.</p>
+     * 
+     * <p>After first write error output drops all data silently, 
+     * so error is reported only once.</p>
+     * @since RibbonServer a3
+     */
+    public static class SessionOutput {
+        
+        /**
+         * Size of pooled buffer.
+         */
+        public static final int BUFFER_SIZE = 16384;
+        
+        /**
+         * Pool of free buffers.
+         */
+        private static final java.util.concurrent.ArrayBlockingQueue<byte[]> bufferPool = new java.util.concurrent.ArrayBlockingQueue<>(256);
+        
+        /**
+         * Line separator bytes.
+         */
+        private static final byte[] NEW_LINE = new byte[] {'\n'};
+        
+        /**
+         * Underlying stream.
+         */
+        private java.io.OutputStream outStream;
+        
+        /**
+         * Charset of output lines.
+         */
+        private final java.nio.charset.Charset charset;
+        
+        /**
+         * Current buffer (null if nothing is buffered).
+         */
+        private byte[] buffer;
+        
+        /**
+         * Count of buffered bytes.
+         */
+        private int count = 0;
+        
+        /**
+         * Underlying stream failed on write.
+         */
+        private Boolean broken = false;
+        
+        /**
+         * Default constructor.
+         * @param givenStream stream to write;
+         * @param givenCharset charset of output lines;
+         */
+        public SessionOutput(java.io.OutputStream givenStream, java.nio.charset.Charset givenCharset) {
+            outStream = givenStream;
+            charset = givenCharset;
+        }
+        
+        /**
+         * Put line and line separator to the buffer.
+         * @param line line to write;
+         * @throws java.io.IOException 
+         */
+        public synchronized void printLn(String line) throws java.io.IOException {
+            byte[] raw = line.getBytes(charset);
+            put(raw, 0, raw.length);
+            put(NEW_LINE, 0, 1);
+        }
+        
+        /**
+         * Put raw bytes to the buffer.
+         * @param raw bytes to write;
+         * @throws java.io.IOException 
+         */
+        public synchronized void write(byte[] raw) throws java.io.IOException {
+            put(raw, 0, raw.length);
+        }
+        
+        /**
+         * Write buffered bytes and flush underlying stream.
+         * @throws java.io.IOException 
+         */
+        public synchronized void flush() throws java.io.IOException {
+            try {
+                drain();
+                if (!broken) {
+                    outStream.flush();
+                }
+            } catch (java.io.IOException ex) {
+                broken = true;
+                throw ex;
+            } finally {
+                release();
+            }
+        }
+        
+        /**
+         * Write part of the file to the stream right after buffered bytes.
+         * <p>Bytes go through transfer buffer of the file channel, 
+         * so content is never decoded or copied to the heap as a whole. 
+         * Small files which fit into the buffer are copied there to leave 
+         * the socket in one segment with the rest of the answer.</p>
+         * @param file file to send;
+         * @param length count of bytes to send (missing bytes are replaced by line separators);
+         * @throws java.io.IOException 
+         */
+        public synchronized void transferFrom(java.nio.channels.FileChannel file, long length) throws java.io.IOException {
+            if (broken) {
+                return;
+            }
+            try {
+                if (count + length <= BUFFER_SIZE) {
+                    if (buffer == null) {
+                        buffer = bufferPool.poll();
+                        if (buffer == null) {
+                            buffer = new byte[BUFFER_SIZE];
+                        }
+                    }
+                    java.nio.ByteBuffer content = java.nio.ByteBuffer.wrap(buffer, count, (int) length);
+                    while (content.hasRemaining() && file.read(content) > 0) {}
+                    java.util.Arrays.fill(buffer, content.position(), count + (int) length, NEW_LINE[0]);
+                    count += (int) length;
+                    return;
+                }
+                drain();
+                java.nio.channels.WritableByteChannel target = java.nio.channels.Channels.newChannel(outStream);
+                long position = 0;
+                while (position < length) {
+                    long sent = file.transferTo(position, length - position, target);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                }
+                if (position < length) {
+                    outStream.write(getPadding(length - position));
+                }
+            } catch (java.io.IOException ex) {
+                broken = true;
+                release();
+                throw ex;
+            }
+        }
+        
+        /**
+         * Get charset of output lines.
+         * @return charset;
+         */
+        public java.nio.charset.Charset getCharset() {
+            return charset;
+        }
+        
+        /**
+         * Get line separators which replace missing bytes of the file.
+         * @param count count of missing bytes;
+         * @return padding bytes;
+         */
+        static byte[] getPadding(long count) {
+            byte[] padding = new byte[(int) count];
+            java.util.Arrays.fill(padding, (byte) '\n');
+            return padding;
+        }
+        
+        /**
+         * Flush output and switch it to other stream.
+         * @param givenStream new stream to write (may wrap previous one);
+         * @throws java.io.IOException 
+         */
+        public synchronized void setStream(java.io.OutputStream givenStream) throws java.io.IOException {
+            flush();
+            outStream = givenStream;
+        }
+        
+        /**
+         * Flush output and close underlying stream.
+         * @throws java.io.IOException 
+         */
+        public synchronized void close() throws java.io.IOException {
+            try {
+                flush();
+            } finally {
+                outStream.close();
+            }
+        }
+        
+        /**
+         * Copy bytes to the buffer, big chunks are written directly.
+         * @param raw bytes to write;
+         * @param offset start offset;
+         * @param length count of bytes;
+         * @throws java.io.IOException 
+         */
+        private void put(byte[] raw, int offset, int length) throws java.io.IOException {
+            if (broken) {
+                return;
+            }
+            try {
+                if (length >= BUFFER_SIZE) {
+                    drain();
+                    outStream.write(raw, offset, length);
+                    return;
+                }
+                if (buffer == null) {
+                    buffer = bufferPool.poll();
+                    if (buffer == null) {
+                        buffer = new byte[BUFFER_SIZE];
+                    }
+                } else if (count + length > BUFFER_SIZE) {
+                    drain();
+                }
+                System.arraycopy(raw, offset, buffer, count, length);
+                count += length;
+            } catch (java.io.IOException ex) {
+                broken = true;
+                release();
+                throw ex;
+            }
+        }
+        
+        /**
+         * Write buffered bytes to underlying stream.
+         * @throws java.io.IOException 
+         */
+        private void drain() throws java.io.IOException {
+            if (count > 0 && !broken) {
+                int length = count;
+                count = 0;
+                outStream.write(buffer, 0, length);
+            }
+        }
+        
+        /**
+         * Return buffer to the pool.
+         */
+        private void release() {
+            count = 0;
+            if (buffer != null) {
+                bufferPool.offer(buffer);
+                buffer = null;
+            }
+        }
+    }
+    
+    /**
+     * Executor of outbound queue writers.
+     * 
+     * <p>Writer is blocked only by its own slow peer, so executor 
+     * may grow up to count of sessions with pending output. In virtual 
+     * thread mode every writer runs in own virtual thread instead.</p>
+     * @since RibbonServer a3
+     */
+    private static java.util.concurrent.Executor outboundExecutor = java.util.concurrent.Executors.newCachedThreadPool(new java.util.concurrent.ThreadFactory() {
+        
+        private final java.util.concurrent.atomic.AtomicInteger writerCounter = new java.util.concurrent.atomic.AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-writer-" + writerCounter.incrementAndGet());
+            created.setDaemon(true);
+            return created;
+        }
+    });
+    
+    /**
+     * Timer which delays outbound writes for broadcast window.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ScheduledExecutorService broadcastTimer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-broadcast-timer");
+            created.setDaemon(true);
+            return created;
+        }
+    });
+    
+    /**
+     * Count of sessions which were disconnected by slow consumer policy.
+     * @since RibbonServer a3
+     */
+    public static final java.util.concurrent.atomic.AtomicLong slowDisconnects = new java.util.concurrent.atomic.AtomicLong();
+    
+    /**
+     * Timer of session reaper.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ScheduledExecutorService reaperTimer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread created = new Thread(r, "ribbon-session-reaper");
+            created.setDaemon(true);
+            return created;
+        }
+    });
+    
+    /**
+     * Count of sessions which were closed by session reaper.
+     * @since RibbonServer a3
+     */
+    public static final java.util.concurrent.atomic.AtomicLong reapedSessions = new java.util.concurrent.atomic.AtomicLong();
+    
+    /**
+     * Line which is sent to silent peers.
+     * @since RibbonServer a3
+     */
+    public static final String HEARTBEAT_LINE = "RIBBON_UCTL_HEARTBEAT:";
+    
+    /**
+     * Factory of threads for sessions of control port.
+     * @since RibbonServer a3
+     */
+    private static final java.util.concurrent.ThreadFactory controlThreadFactory = new java.util.concurrent.ThreadFactory() {
+        
+        private final java.util.concurrent.atomic.AtomicInteger controlCounter = new java.util.concurrent.atomic.AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "ribbon-control-session-" + controlCounter.incrementAndGet());
+        }
+    };
+    
+    /**
+     * Queue of log lines for <code>CONTROL</code> connections (created on first use).
+     * @since RibbonServer a3
+     */
+    private static java.util.concurrent.ArrayBlockingQueue<String> logQueue;
+    
+    /**
+     * Count of log lines which were dropped because of full log queue.
+     * @since RibbonServer a3
+     */
+    public static final java.util.concurrent.atomic.AtomicLong droppedLogLines = new java.util.concurrent.atomic.AtomicLong();
+    
+    /**
+     * Factory of threads for <code>SessionThread</code> bodies.
+     * @since RibbonServer a3
+     */
+    private static java.util.concurrent.ThreadFactory sessionThreadFactory = java.util.concurrent.Executors.defaultThreadFactory();
+    
+    /**
+     * Init session manager.
+     * @since RibbonServer a2
+     */
+    public static void init() {
+        SessionManager.sessionCookie = IndexReader.readSessionIndex();
+        RibbonServer.logAppend(LOG_ID, 3, "індекс сесій вдало завантажено");
+        if (RibbonServer.NETWORK_THREAD_MODE.equals("virtual")) {
+            java.util.concurrent.ThreadFactory virtualFactory = getVirtualThreadFactory("ribbon-session-");
+            if (virtualFactory != null) {
+                sessionThreadFactory = virtualFactory;
+                final java.util.concurrent.ThreadFactory writerFactory = getVirtualThreadFactory("ribbon-writer-");
+                outboundExecutor = new java.util.concurrent.Executor() {
+                    
+                    @Override
+                    public void execute(Runnable command) {
+                        writerFactory.newThread(command).start();
+                    }
+                };
+                RibbonServer.logAppend(LOG_ID, 3, "сесії виконуються у віртуальних потоках");
+            } else {
+                RibbonServer.logAppend(LOG_ID, 2, "віртуальні потоки недоступні у цій JVM, використовуються звичайні потоки");
+            }
+        }
+        Integer reaperStep = 0;
+        for (Integer currTimeout : new Integer[] {RibbonServer.NETWORK_IDLE_TIMEOUT, RibbonServer.NETWORK_LOGIN_TIMEOUT, RibbonServer.NETWORK_HEARTBEAT_INTERVAL}) {
+            if (currTimeout > 0 && (reaperStep == 0 || currTimeout < reaperStep)) {
+                reaperStep = currTimeout;
+            }
+        }
+        if (reaperStep > 0) {
+            reaperTimer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reapSessions();
+                }
+            }, reaperStep * 500L, reaperStep * 500L, java.util.concurrent.TimeUnit.MILLISECONDS);
+            RibbonServer.logAppend(LOG_ID, 3, "запущено перевірку неактивних сесій");
+        }
+    }
+    
+    /**
+     * Close sessions which exceeded idle or login timeout and send heartbeats to silent peers.
+     * 
+     * <p>Heartbeat makes TCP stack notice peers which disappeared without 
+     * closing connection, so blocked reads of such sessions fail.</p>
+     * @since RibbonServer a3
+     */
+    private static void reapSessions() {
+        try {
+            long now = System.nanoTime();
+            long idleLimit = java.util.concurrent.TimeUnit.SECONDS.toNanos(RibbonServer.NETWORK_IDLE_TIMEOUT);
+            long loginLimit = java.util.concurrent.TimeUnit.SECONDS.toNanos(RibbonServer.NETWORK_LOGIN_TIMEOUT);
+            long heartbeatLimit = java.util.concurrent.TimeUnit.SECONDS.toNanos(RibbonServer.NETWORK_HEARTBEAT_INTERVAL);
+            Integer reaped = 0;
+            for (Session currSession : SessionManager.sessionsStore) {
+                if (!currSession.isAlive) {
+                    continue;
+                }
+                long silence = now - currSession.lastInputTime;
+                String reason = null;
+                if (loginLimit > 0 && currSession.USER_NAME == null && now - currSession.createdTime >= loginLimit) {
+                    reason = "вхід не виконано";
+                } else if (idleLimit > 0 && silence >= idleLimit) {
+                    reason = "неактивність";
+                }
+                if (reason != null) {
+                    RibbonServer.logAppend(LOG_ID, 3, "сесію " + (currSession.USER_NAME != null ? currSession.SESSION_TIP : currSession.getPeerAddress()) + " закрито (" + reason + ")");
+                    currSession.closeConnection();
+                    reaped++;
+                } else if (heartbeatLimit > 0 && currSession.USER_NAME != null && silence >= heartbeatLimit && now - currSession.lastHeartbeatTime >= heartbeatLimit) {
+                    currSession.lastHeartbeatTime = now;
+                    currSession.enqueueToPeer(HEARTBEAT_LINE);
+                }
+            }
+            if (reaped > 0) {
+                SessionManager.reapedSessions.addAndGet(reaped);
+                RibbonServer.logAppend(LOG_ID, 2, "звільнено неактивних сесій: " + reaped);
+            }
+        } catch (RuntimeException ex) {
+            RibbonServer.logAppend(LOG_ID, 1, "помилка перевірки неактивних сесій");
+        }
+    }
+    
+    /**
+     * Get virtual thread factory of running JVM.
+     * 
+     * <p>Server is built for older Java, so <code>Thread.ofVirtual()</code> 
+     * is resolved at runtime.</p>
+     * @param namePrefix prefix of thread names;
+     * @return thread factory or null if JVM doesn't support virtual threads;
+     * @since RibbonServer a3
+     */
+    private static java.util.concurrent.ThreadFactory getVirtualThreadFactory(String namePrefix) {
+        try {
+            //Builder implementation class isn't public, so methods are taken from public interfaces
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = virtualBuilderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (java.util.concurrent.ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            RibbonServer.logAppend(LOG_ID, 1, "неможливо створити віртуальні потоки: " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Create new session and add it into session list;<br>
+     * Connection slot should be reserved by <code>reserveConnection()</code>.
+     * @param givenSocket socket to open session;
+     * @since RibbonServer a1
+     */
+    public static void createNewSession(java.net.Socket givenSocket) {
+        SessionManager.SessionThread createdThread = new SessionManager.SessionThread(givenSocket);
+        if (createdThread.isAlive) {
+            SessionManager.addSession(createdThread);
+            sessionThreadFactory.newThread(createdThread).start();
+        } else {
+            SessionManager.releaseConnection();
+        }
+    }
+    
+    /**
+     * Create new session of control port and add it into session list.<br>
+     * Session is always served by own thread, despite network engine.<br>
+     * Connection slot should be reserved by <code>reserveControlConnection()</code>.
+     * @param givenSocket socket to open session;
+     * @since RibbonServer a3
+     */
+    public static void createNewControlSession(java.net.Socket givenSocket) {
+        SessionManager.SessionThread createdThread = new SessionManager.SessionThread(givenSocket);
+        createdThread.FROM_CONTROL_PORT = true;
+        if (createdThread.isAlive) {
+            SessionManager.addSession(createdThread);
+            controlThreadFactory.newThread(createdThread).start();
+        } else {
+            SessionManager.releaseControlConnection();
+        }
+    }
+    
+    /**
+     * Add session which was created by other network engine into session list.<br>
+     * Connection slot should be reserved by <code>reserveConnection()</code>.
+     * @param givenSession session to add;
+     * @since RibbonServer a3
+     */
+    public static void addSession(SessionManager.Session givenSession) {
+        if (givenSession.isAlive) {
+            SessionManager.sessionsStore.add(givenSession);
+            SessionManager.sessionsByType.get(givenSession.ProtocolHandler.CURR_TYPE).add(givenSession);
+            SessionManager.unscopedByType.get(givenSession.ProtocolHandler.CURR_TYPE).add(givenSession);
+        } else if (givenSession.FROM_CONTROL_PORT) {
+            SessionManager.releaseControlConnection();
+        } else {
+            SessionManager.releaseConnection();
         }
     }
     
@@ -282,38 +1406,216 @@ public final class SessionManager {
      * @param givenSession sessionb to close;
      * @since RibbonServer a1
      */
-    public static void closeSession(SessionManager.SessionThread givenSession) {
-        if (!givenSession.isAlive) {
-            SessionManager.sessionsStore.remove(givenSession);
+    public static void closeSession(SessionManager.Session givenSession) {
+        if (!givenSession.isAlive && SessionManager.sessionsStore.remove(givenSession)) {
+            synchronized (givenSession) {
+                SessionManager.sessionsByType.get(givenSession.ProtocolHandler.CURR_TYPE).remove(givenSession);
+                SessionManager.unscopedByType.get(givenSession.ProtocolHandler.CURR_TYPE).remove(givenSession);
+                SessionManager.unindexUser(givenSession);
+                SessionManager.unindexDirs(givenSession, givenSession.subscribedDirs, null);
+                givenSession.subscribedDirs = null;
+            }
+            if (givenSession.FROM_CONTROL_PORT) {
+                SessionManager.releaseControlConnection();
+            } else {
+                SessionManager.releaseConnection();
+            }
+        }
+    }
+    
+    /**
+     * Change connection type of the session and update type index.
+     * @param givenSession session to update;
+     * @param givenType new type of the connection;
+     * @since RibbonServer a3
+     */
+    public static void updateSessionType(SessionManager.Session givenSession, RibbonProtocol.CONNECTION_TYPES givenType) {
+        synchronized (givenSession) {
+            SessionManager.sessionsByType.get(givenSession.ProtocolHandler.CURR_TYPE).remove(givenSession);
+            SessionManager.unscopedByType.get(givenSession.ProtocolHandler.CURR_TYPE).remove(givenSession);
+            givenSession.ProtocolHandler.CURR_TYPE = givenType;
+            if (SessionManager.sessionsStore.contains(givenSession)) {
+                SessionManager.sessionsByType.get(givenType).add(givenSession);
+                if (givenSession.subscribedDirs == null) {
+                    SessionManager.unscopedByType.get(givenType).add(givenSession);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Set user of the session after login and update user index.
+     * @param givenSession session to update;
+     * @param givenName name of logined user;
+     * @since RibbonServer a3
+     */
+    public static void updateSessionUser(SessionManager.Session givenSession, String givenName) {
+        synchronized (givenSession) {
+            SessionManager.unindexUser(givenSession);
+            givenSession.USER_NAME = givenName;
+            if (givenName != null && SessionManager.sessionsStore.contains(givenSession)) {
+                givenSession.indexedUser = givenName;
+                SessionManager.sessionsByUser.computeIfAbsent(givenName, key -> java.util.concurrent.ConcurrentHashMap.<SessionManager.Session>newKeySet()).add(givenSession);
+            }
+        }
+    }
+    
+    /**
+     * Remove session from user index.
+     * @param givenSession session to remove;
+     * @since RibbonServer a3
+     */
+    private static void unindexUser(SessionManager.Session givenSession) {
+        if (givenSession.indexedUser != null) {
+            SessionManager.sessionsByUser.computeIfPresent(givenSession.indexedUser, (key, userSessions) -> {
+                userSessions.remove(givenSession);
+                return userSessions.isEmpty() ? null : userSessions;
+            });
+            givenSession.indexedUser = null;
+        }
+    }
+    
+    /**
+     * Change directory subscription of the session and update routing table.
+     * @param givenSession session to update;
+     * @param givenDirs set of directories or null to receive all broadcasts;
+     * @since RibbonServer a3
+     */
+    public static void updateSessionDirs(SessionManager.Session givenSession, java.util.Set<String> givenDirs) {
+        synchronized (givenSession) {
+            if (!SessionManager.sessionsStore.contains(givenSession)) {
+                return;
+            }
+            java.util.Set<SessionManager.Session> unscoped = SessionManager.unscopedByType.get(givenSession.ProtocolHandler.CURR_TYPE);
+            java.util.Set<String> oldDirs = givenSession.subscribedDirs;
+            if (givenDirs == null || givenDirs.isEmpty()) {
+                givenSession.subscribedDirs = null;
+                unscoped.add(givenSession);
+            } else {
+                for (String currDir : givenDirs) {
+                    SessionManager.sessionsByDir.computeIfAbsent(currDir, key -> java.util.concurrent.ConcurrentHashMap.<SessionManager.Session>newKeySet()).add(givenSession);
+                }
+                givenSession.subscribedDirs = java.util.Collections.unmodifiableSet(new java.util.HashSet<>(givenDirs));
+                unscoped.remove(givenSession);
+            }
+            SessionManager.unindexDirs(givenSession, oldDirs, givenSession.subscribedDirs);
+        }
+    }
+    
+    /**
+     * Remove session from routing table.
+     * @param givenSession session to remove;
+     * @param removeDirs directories to remove session from (may be null);
+     * @param keepDirs directories which should be kept (may be null);
+     * @since RibbonServer a3
+     */
+    private static void unindexDirs(SessionManager.Session givenSession, java.util.Set<String> removeDirs, java.util.Set<String> keepDirs) {
+        if (removeDirs == null) {
+            return;
+        }
+        for (String currDir : removeDirs) {
+            if (keepDirs != null && keepDirs.contains(currDir)) {
+                continue;
+            }
+            SessionManager.sessionsByDir.computeIfPresent(currDir, (key, dirSessions) -> {
+                dirSessions.remove(givenSession);
+                return dirSessions.isEmpty() ? null : dirSessions;
+            });
         }
     }
     
     /**
-     * Broadcast message to all users
+     * Broadcast message to all users.
+     * 
+     * <p>Message is put to outbound queue of every matched session, 
+     * so caller is never blocked by slow peers.</p>
      * @param message a single line message
      * @since RibbonServer a1
      */
     public static void broadcast(String message, RibbonProtocol.CONNECTION_TYPES type) {
-        java.util.ListIterator<SessionThread> sessionIter = SessionManager.sessionsStore.listIterator();
-        while (sessionIter.hasNext()) {
-            SessionThread currSession = sessionIter.next();
-            if (currSession.ProtocolHandler.CURR_TYPE == type) {
-                currSession.printLnToPeer(message);
+        for (Session currSession : SessionManager.sessionsByType.get(type)) {
+            currSession.enqueueToPeer(message);
+        }
+    }
+    
+    /**
+     * Broadcast message about changes in given directories.
+     * 
+     * <p>Message is delivered to sessions without subscription and to 
+     * sessions which subscribed to one of directories.</p>
+     * @param message a single line message;
+     * @param type type of receiving connections;
+     * @param dirs directories of the message (null to send to all sessions of type);
+     * @since RibbonServer a3
+     */
+    public static void broadcast(String message, RibbonProtocol.CONNECTION_TYPES type, String[] dirs) {
+        if (dirs == null) {
+            broadcast(message, type);
+            return;
+        }
+        for (Session currSession : SessionManager.unscopedByType.get(type)) {
+            currSession.enqueueToPeer(message);
+        }
+        java.util.Set<Session> routed = dirs.length > 1 ? new java.util.HashSet<Session>() : null;
+        for (String currDir : dirs) {
+            java.util.Set<Session> dirSessions = currDir == null ? null : SessionManager.sessionsByDir.get(currDir);
+            if (dirSessions == null) {
+                continue;
+            }
+            for (Session currSession : dirSessions) {
+                if (currSession.ProtocolHandler.CURR_TYPE == type && (routed == null || routed.add(currSession))) {
+                    currSession.enqueueToPeer(message);
+                }
             }
         }
     }
     
+    /**
+     * Put log line to the queue of <code>CONTROL</code> connections.
+     * 
+     * <p>Lines are sent by separate thread, so logging is never blocked 
+     * by sessions. Lines are dropped if queue is full.</p>
+     * @param message compiled log line;
+     * @since RibbonServer a3
+     */
+    public static synchronized void streamLog(String message) {
+        if (logQueue == null) {
+            logQueue = new java.util.concurrent.ArrayBlockingQueue<>(RibbonServer.NETWORK_CONTROL_LOG_QUEUE);
+            Thread streamThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        try {
+                            broadcast(logQueue.take(), RibbonProtocol.CONNECTION_TYPES.CONTROL);
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        if (logQueue.isEmpty()) {
+                            long dropped = droppedLogLines.getAndSet(0);
+                            if (dropped > 0) {
+                                RibbonServer.logAppend(LOG_ID, 2, "пропущено рядків журналу: " + dropped);
+                            }
+                        }
+                    }
+                }
+            }, "ribbon-log-stream");
+            streamThread.setDaemon(true);
+            streamThread.start();
+        }
+        if (!logQueue.offer(message)) {
+            droppedLogLines.incrementAndGet();
+        }
+    }
+    
     /**
      * Check if there is other control connection for the system
      * @param closingControlThread thread which going to close
      * @return result of checking
      * @since RibbonServer a2
      */
-    public static Boolean hasOtherControl(SessionThread closingControlThread) {
-        java.util.ListIterator<SessionThread> sessionIter = SessionManager.sessionsStore.listIterator();
-        while (sessionIter.hasNext()) {
-            SessionThread currSession = sessionIter.next();
-            if (currSession.ProtocolHandler.CURR_TYPE == RibbonProtocol.CONNECTION_TYPES.CONTROL && !currSession.equals(closingControlThread)) {
+    public static Boolean hasOtherControl(Session closingControlThread) {
+        for (Session currSession : SessionManager.sessionsByType.get(RibbonProtocol.CONNECTION_TYPES.CONTROL)) {
+            if (!currSession.equals(closingControlThread)) {
                 return true;
             }
         }
@@ -321,17 +1623,69 @@ public final class SessionManager {
     }
     
     /**
-     * Check server connection limit.
-     * @return true if limit achieved/fals if not;
-     * @since RibbonServer a2
+     * Reserve connection slot for accepted connection.
+     * @return true if slot reserved/false if limit achieved;
+     * @since RibbonServer a3
      */
-    public static Boolean checkConnectionLimit() {
-        if (RibbonServer.NETWORK_MAX_CONNECTIONS != -1 && SessionManager.sessionsStore.size() == RibbonServer.NETWORK_MAX_CONNECTIONS) {
-            RibbonServer.logAppend(LOG_ID, 1, "досягнуто ліміту з'єднань (" + RibbonServer.NETWORK_MAX_CONNECTIONS + ")");
-            return true;
-        } else {
+    public static Boolean reserveConnection() {
+        while (true) {
+            Integer current = SessionManager.connectionCount.get();
+            if (RibbonServer.NETWORK_MAX_CONNECTIONS != -1 && current >= RibbonServer.NETWORK_MAX_CONNECTIONS) {
+                RibbonServer.logAppend(LOG_ID, 1, "досягнуто ліміту з'єднань (" + RibbonServer.NETWORK_MAX_CONNECTIONS + ")");
+                return false;
+            }
+            if (SessionManager.connectionCount.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Release connection slot.
+     * @since RibbonServer a3
+     */
+    public static void releaseConnection() {
+        SessionManager.connectionCount.decrementAndGet();
+    }
+    
+    /**
+     * Reserve connection slot of control port.
+     * @return true if slot reserved/false if limit achieved;
+     * @since RibbonServer a3
+     */
+    public static Boolean reserveControlConnection() {
+        if (SessionManager.controlConnectionCount.incrementAndGet() > RibbonServer.NETWORK_CONTROL_MAX_CONNECTIONS) {
+            SessionManager.controlConnectionCount.decrementAndGet();
+            RibbonServer.logAppend(LOG_ID, 1, "досягнуто ліміту з'єднань порту керування (" + RibbonServer.NETWORK_CONTROL_MAX_CONNECTIONS + ")");
             return false;
         }
+        return true;
+    }
+    
+    /**
+     * Release connection slot of control port.
+     * @since RibbonServer a3
+     */
+    public static void releaseControlConnection() {
+        SessionManager.controlConnectionCount.decrementAndGet();
+    }
+    
+    /**
+     * Get count of opened connections.
+     * @return count of connections;
+     * @since RibbonServer a3
+     */
+    public static Integer getConnectionCount() {
+        return SessionManager.connectionCount.get();
+    }
+    
+    /**
+     * Get snapshot of opened sessions.
+     * @return list of sessions;
+     * @since RibbonServer a3
+     */
+    public static java.util.ArrayList<SessionManager.Session> getSessions() {
+        return new java.util.ArrayList<>(SessionManager.sessionsStore);
     }
     
     /**
@@ -341,15 +1695,7 @@ public final class SessionManager {
      * @since RibbonServer a2
      */
     public static Boolean isAlreadyLogined(String givenName) {
-        for (SessionThread iterSess : SessionManager.sessionsStore) {
-            if (iterSess.USER_NAME == null) {
-                continue;
-            }
-            if (iterSess.USER_NAME.equals(givenName)) {
-                return true;
-            }
-        }
-        return false;
+        return SessionManager.sessionsByUser.containsKey(givenName);
     }
     
     /**
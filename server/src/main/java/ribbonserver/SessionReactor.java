@@ -0,0 +1,1055 @@
+/**
+ * This file is part of RibbonServer application (check README).
+ * Copyright (C) 2012-2013 Stanislav Nepochatov
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+**/
+
+package ribbonserver;
+
+/**
+ * Non-blocking network engine.
+ *
+ * <p>Sockets are served by small pool of selector loops which only
+ * read and write bytes. Complete commands are executed by worker pool,
+ * one command at time for each session. Commands which carry message body
+ * (<code>RIBBON_POST_MESSAGE</code>, <code>RIBBON_MODIFY_MESSAGE</code>)
+ * are dispatched only when <code>END:</code> line is received, so worker
+ * never waits for the body. <code>RIBBON_NCTL_ACCESS_CONTEXT</code> doesn't
+ * wait for the next line either: protocol keeps the user and applies it
+ * to the next command.</p>
+ *
+ * <p>Framed protocol is recognized by the loop from the first
+ * <code>RIBBON_NCTL_INIT</code> or <code>RIBBON_NCTL_CONNECT</code> 
+ * line, then frame payload after body
+ * command is collected in bulk without line splitting.</p>
+ * @author Stanislav Nepochatov
+ * @since RibbonServer a3
+ */
+public final class SessionReactor {
+
+    private static String LOG_ID = "РЕАКТОР";
+
+    /**
+     * Size of socket read buffer.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum length of single input line.
+     */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /**
+     * Size of received input which stops reading from session while commands are waiting for execution.
+     */
+    private static final long INPUT_QUEUE_LIMIT = 1024 * 1024;
+
+    /**
+     * Size of buffered output of session which stops broadcasts and commands until peer reads it.
+     */
+    private static final long PENDING_WRITE_LIMIT = 256 * 1024;
+
+    /**
+     * Selector loops.
+     */
+    private static EventLoop[] loops;
+
+    /**
+     * Round-robin loop counter.
+     */
+    private static final java.util.concurrent.atomic.AtomicInteger loopCounter = new java.util.concurrent.atomic.AtomicInteger();
+
+    /**
+     * Command execution pool.
+     */
+    private static java.util.concurrent.ExecutorService workers;
+
+    /**
+     * Init reactor and start selector loops.
+     * @param loopCount count of selector loops;
+     * @param workerCount count of command workers;
+     * @throws java.io.IOException if selector can't be opened;
+     */
+    public static void init(int loopCount, int workerCount) throws java.io.IOException {
+        loops = new EventLoop[loopCount];
+        for (int index = 0; index < loopCount; index++) {
+            loops[index] = new EventLoop(index);
+            loops[index].start();
+        }
+        workers = java.util.concurrent.Executors.newFixedThreadPool(workerCount, new java.util.concurrent.ThreadFactory() {
+
+            private final java.util.concurrent.atomic.AtomicInteger workerCounter = new java.util.concurrent.atomic.AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread created = new Thread(r, "ribbon-worker-" + workerCounter.incrementAndGet());
+                created.setDaemon(true);
+                return created;
+            }
+        });
+        RibbonServer.logAppend(LOG_ID, 3, "реактор запущено (циклів: " + loopCount + ", виконавців: " + workerCount + ")");
+    }
+
+    /**
+     * Register accepted channel as new session.
+     * @param givenChannel accepted socket channel;
+     */
+    public static void register(java.nio.channels.SocketChannel givenChannel) {
+        EventLoop targetLoop = loops[Math.abs(loopCounter.getAndIncrement() % loops.length)];
+        try {
+            givenChannel.configureBlocking(false);
+            givenChannel.socket().setTcpNoDelay(true);
+        } catch (java.io.IOException ex) {
+            RibbonServer.logAppend(LOG_ID, 1, "неможливо налаштувати мережевий канал!");
+            closeQuietly(givenChannel);
+            SessionManager.releaseConnection();
+            return;
+        }
+        ReactorSession createdSession = new ReactorSession(givenChannel, targetLoop);
+        SessionManager.addSession(createdSession);
+        targetLoop.submit(() -> targetLoop.attach(createdSession));
+    }
+
+    /**
+     * Close channel without exceptions.
+     * @param givenChannel channel to close;
+     */
+    private static void closeQuietly(java.nio.channels.Channel givenChannel) {
+        try {
+            givenChannel.close();
+        } catch (java.io.IOException ex) {}
+    }
+
+    /**
+     * Selector loop thread.
+     */
+    private static class EventLoop extends Thread {
+
+        /**
+         * Selector of this loop.
+         */
+        private final java.nio.channels.Selector selector;
+
+        /**
+         * Tasks which should be executed within loop thread.
+         */
+        private final java.util.concurrent.ConcurrentLinkedQueue<Runnable> tasks = new java.util.concurrent.ConcurrentLinkedQueue<>();
+
+        /**
+         * Shared read buffer.
+         */
+        private final java.nio.ByteBuffer readBuffer = java.nio.ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        /**
+         * Default constructor.
+         * @param loopIndex index of the loop;
+         * @throws java.io.IOException
+         */
+        EventLoop(int loopIndex) throws java.io.IOException {
+            super("ribbon-reactor-" + loopIndex);
+            this.setDaemon(true);
+            this.selector = java.nio.channels.Selector.open();
+        }
+
+        /**
+         * Execute task within loop thread.
+         * @param givenTask task to execute;
+         */
+        void submit(Runnable givenTask) {
+            tasks.add(givenTask);
+            selector.wakeup();
+        }
+
+        /**
+         * Register session channel in selector.
+         * @param givenSession session to register;
+         */
+        private void attach(ReactorSession givenSession) {
+            try {
+                givenSession.key = givenSession.channel.register(selector, java.nio.channels.SelectionKey.OP_READ, givenSession);
+                givenSession.updateInterest();
+            } catch (java.nio.channels.ClosedChannelException ex) {
+                givenSession.shutdown();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable currTask;
+                    while ((currTask = tasks.poll()) != null) {
+                        currTask.run();
+                    }
+                    java.util.Iterator<java.nio.channels.SelectionKey> keyIter = selector.selectedKeys().iterator();
+                    while (keyIter.hasNext()) {
+                        java.nio.channels.SelectionKey currKey = keyIter.next();
+                        keyIter.remove();
+                        ReactorSession currSession = (ReactorSession) currKey.attachment();
+                        if (!currKey.isValid()) {
+                            currSession.shutdown();
+                            continue;
+                        }
+                        try {
+                            if (currKey.isReadable()) {
+                                currSession.handleRead(readBuffer);
+                            }
+                            if (currKey.isValid() && currKey.isWritable()) {
+                                currSession.handleWrite();
+                            }
+                        } catch (java.io.IOException ex) {
+                            RibbonServer.logAppend(LOG_ID, 1, "неможливо прочитати дані з сокету (" + currSession.getPeerAddress() + ")");
+                            currSession.shutdown();
+                        }
+                    }
+                } catch (Exception ex) {
+                    RibbonServer.logAppend(LOG_ID, 1, "помилка циклу реактора: " + ex.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Line received from the peer.
+     */
+    private static class InputLine {
+
+        /**
+         * Raw bytes of the line without line terminator.
+         */
+        final byte[] RAW;
+
+        /**
+         * This line completes command (command itself or <code>END:</code> of the body).
+         */
+        final Boolean UNIT_END;
+
+        /**
+         * This line is init command which decides framing of next commands.
+         */
+        final Boolean HANDSHAKE;
+
+        InputLine(byte[] givenRaw, Boolean givenEnd) {
+            this(givenRaw, givenEnd, false);
+        }
+
+        InputLine(byte[] givenRaw, Boolean givenEnd, Boolean givenHandshake) {
+            RAW = givenRaw;
+            UNIT_END = givenEnd;
+            HANDSHAKE = givenHandshake;
+        }
+    }
+
+    /**
+     * Part of the file which waits for write to the channel.
+     */
+    private static class FileRegion {
+
+        /**
+         * File to send.
+         */
+        private final java.nio.channels.FileChannel file;
+
+        /**
+         * Count of bytes to send.
+         */
+        private final long length;
+
+        /**
+         * Count of already sent bytes.
+         */
+        private long position = 0;
+
+        /**
+         * Line separators which replace missing bytes of shrinked file.
+         */
+        private java.nio.ByteBuffer padding;
+
+        FileRegion(java.nio.channels.FileChannel givenFile, long givenLength) {
+            file = givenFile;
+            length = givenLength;
+        }
+
+        /**
+         * Send next part of the file by kernel transfer.
+         * @param channel session channel;
+         * @return true if whole region is sent;
+         * @throws java.io.IOException
+         */
+        Boolean writeTo(java.nio.channels.SocketChannel channel) throws java.io.IOException {
+            while (padding == null && position < length) {
+                long sent = file.transferTo(position, length - position, channel);
+                if (sent > 0) {
+                    position += sent;
+                } else if (position < file.size()) {
+                    return false;
+                } else {
+                    padding = java.nio.ByteBuffer.wrap(SessionManager.SessionOutput.getPadding(length - position));
+                }
+            }
+            if (padding != null) {
+                channel.write(padding);
+                if (padding.hasRemaining()) {
+                    return false;
+                }
+            }
+            close();
+            return true;
+        }
+
+        /**
+         * Close file of this region.
+         */
+        void close() {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Session which is served by selector loop.
+     */
+    public static class ReactorSession extends SessionManager.Session {
+
+        /**
+         * Prefixes of commands which carry message body.
+         */
+        private static final byte[][] BODY_COMMANDS = new byte[][] {
+            RibbonProtocol.BODY_COMMANDS[0].getBytes(java.nio.charset.StandardCharsets.US_ASCII),
+            RibbonProtocol.BODY_COMMANDS[1].getBytes(java.nio.charset.StandardCharsets.US_ASCII)
+        };
+
+        /**
+         * Body terminator line.
+         */
+        private static final byte[] BODY_END = "END:".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        /**
+         * Prefix of tagged command.
+         */
+        private static final byte[][] TAGGED_COMMAND = new byte[][] {
+            RibbonProtocol.TAGGED_PREFIX.getBytes(java.nio.charset.StandardCharsets.US_ASCII)
+        };
+
+        /**
+         * Prefixes of init commands.
+         */
+        private static final byte[][] INIT_COMMAND = new byte[][] {
+            "RIBBON_NCTL_INIT:".getBytes(java.nio.charset.StandardCharsets.US_ASCII),
+            "RIBBON_NCTL_CONNECT:".getBytes(java.nio.charset.StandardCharsets.US_ASCII)
+        };
+
+        /**
+         * Marker of closed input.
+         */
+        private static final InputLine EOF_LINE = new InputLine(null, true);
+
+        /**
+         * Session channel.
+         */
+        private final java.nio.channels.SocketChannel channel;
+
+        /**
+         * Loop which serves this session.
+         */
+        private final EventLoop loop;
+
+        /**
+         * Selection key of the channel.
+         */
+        private java.nio.channels.SelectionKey key;
+
+        /**
+         * Cached peer address.
+         */
+        private final String peerAddress;
+
+        /**
+         * Input charset.
+         */
+        private volatile java.nio.charset.Charset inputCharset = java.nio.charset.StandardCharsets.UTF_8;
+
+        /**
+         * Output charset.
+         */
+        private final java.nio.charset.Charset outputCharset = java.nio.charset.Charset.defaultCharset();
+
+        /**
+         * Buffered output which passes filled buffers to write queue.
+         */
+        private final SessionManager.SessionOutput outStream = new SessionManager.SessionOutput(new java.io.OutputStream() {
+            @Override
+            public void write(int b) {
+                queueWrite(new byte[] {(byte) b});
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                queueWrite(java.util.Arrays.copyOfRange(b, off, off + len));
+            }
+        }, outputCharset);
+
+        /**
+         * Bytes of incomplete line.
+         */
+        private final java.io.ByteArrayOutputStream partialLine = new java.io.ByteArrayOutputStream(256);
+
+        /**
+         * Session is inside message body.
+         */
+        private Boolean inBody = false;
+
+        /**
+         * Message bodies are framed (loop thread only, set by accepted init command).
+         */
+        private Boolean framedInput = false;
+
+        /**
+         * Init command waits for execution, so framing of next commands isn't known yet (loop thread only).
+         */
+        private Boolean handshakePending = false;
+
+        /**
+         * Peer closed its output, so nothing more is read (loop thread only).
+         */
+        private Boolean inputClosed = false;
+
+        /**
+         * Bytes which were received after pending init command (loop thread only).
+         */
+        private byte[] heldInput;
+
+        /**
+         * Worker took line of init command (worker thread only).
+         */
+        private Boolean handshakeTaken = false;
+
+        /**
+         * Payload of frame which is being received.
+         */
+        private byte[] frameBuffer;
+
+        /**
+         * Count of received bytes of frame payload.
+         */
+        private int frameFilled;
+
+        /**
+         * Received lines.
+         */
+        private final java.util.concurrent.LinkedBlockingQueue<InputLine> inputLines = new java.util.concurrent.LinkedBlockingQueue<>();
+
+        /**
+         * Count of bytes in <code>inputLines</code>.
+         */
+        private final java.util.concurrent.atomic.AtomicLong queuedInputBytes = new java.util.concurrent.atomic.AtomicLong();
+
+        /**
+         * Reading from channel is paused until queued input is executed.
+         */
+        private volatile Boolean readPaused = false;
+
+        /**
+         * Count of complete commands in <code>inputLines</code>.
+         */
+        private final java.util.concurrent.atomic.AtomicInteger readyUnits = new java.util.concurrent.atomic.AtomicInteger();
+
+        /**
+         * Worker task for this session is scheduled.
+         */
+        private final java.util.concurrent.atomic.AtomicBoolean scheduled = new java.util.concurrent.atomic.AtomicBoolean(false);
+
+        /**
+         * Buffers waiting for write.
+         */
+        private final java.util.concurrent.ConcurrentLinkedQueue<Object> pendingWrites = new java.util.concurrent.ConcurrentLinkedQueue<>();
+
+        /**
+         * Count of bytes in heap buffers of <code>pendingWrites</code>.
+         */
+        private final java.util.concurrent.atomic.AtomicLong pendingBytes = new java.util.concurrent.atomic.AtomicLong();
+
+        /**
+         * Lock which keeps order of compressed buffers.
+         */
+        private final Object writeLock = new Object();
+
+        /**
+         * Output compressor (null if compression is off).
+         */
+        private java.util.zip.Deflater deflater;
+
+        /**
+         * Close channel after all pending writes.
+         */
+        private volatile Boolean closeAfterWrite = false;
+
+        /**
+         * Session is shut down.
+         */
+        private final java.util.concurrent.atomic.AtomicBoolean closed = new java.util.concurrent.atomic.AtomicBoolean(false);
+
+        /**
+         * Worker body.
+         */
+        private final Runnable commandTask = new Runnable() {
+            @Override
+            public void run() {
+                runCommands();
+            }
+        };
+
+        /**
+         * Default constructor.
+         * @param givenChannel session channel;
+         * @param givenLoop selector loop;
+         */
+        ReactorSession(java.nio.channels.SocketChannel givenChannel, EventLoop givenLoop) {
+            channel = givenChannel;
+            loop = givenLoop;
+            peerAddress = givenChannel.socket().getInetAddress().getHostAddress();
+            ProtocolHandler = new RibbonProtocol(this);
+            RibbonServer.logAppend(LOG_ID, 3, "додана нова мережева сессія (" + peerAddress + ")");
+            this.isAlive = true;
+        }
+
+        /**
+         * Read available bytes and split them into lines.
+         * @param readBuffer loop read buffer;
+         * @throws java.io.IOException
+         */
+        private void handleRead(java.nio.ByteBuffer readBuffer) throws java.io.IOException {
+            readBuffer.clear();
+            int readed = channel.read(readBuffer);
+            if (readed == -1) {
+                closeInput();
+                return;
+            }
+            touchInput();
+            readBuffer.flip();
+            parseInput(readBuffer);
+        }
+
+        /**
+         * Split received bytes into lines and frames.
+         * <p>Parsing stops after init command until its result is known, 
+         * rest of bytes is held and parsed by {@link #resumeInput()}.</p>
+         * @param readBuffer received bytes;
+         */
+        private void parseInput(java.nio.ByteBuffer readBuffer) {
+            Boolean hasUnits = false;
+            while (readBuffer.hasRemaining()) {
+                if (handshakePending) {
+                    holdInput(readBuffer);
+                    break;
+                }
+                if (frameBuffer != null) {
+                    int chunk = Math.min(frameBuffer.length - frameFilled, readBuffer.remaining());
+                    readBuffer.get(frameBuffer, frameFilled, chunk);
+                    frameFilled += chunk;
+                    if (frameFilled == frameBuffer.length) {
+                        hasUnits |= completeFrame();
+                    }
+                    continue;
+                }
+                byte curr = readBuffer.get();
+                if (curr == '\n') {
+                    hasUnits |= queueLine(takePartialLine());
+                    if (closed.get()) {
+                        return;
+                    }
+                } else if (partialLine.size() < MAX_LINE_LENGTH) {
+                    partialLine.write(curr);
+                } else {
+                    RibbonServer.logAppend(LOG_ID, 1, "перевищено довжину рядка (" + peerAddress + ")");
+                    shutdown();
+                    return;
+                }
+            }
+            if (hasUnits) {
+                schedule();
+            }
+            if (handshakePending || isInputFull()) {
+                updateInterest();
+            }
+        }
+
+        /**
+         * Take collected bytes of the line without line terminator.
+         * @return raw line bytes;
+         */
+        private byte[] takePartialLine() {
+            byte[] raw = partialLine.toByteArray();
+            partialLine.reset();
+            int length = raw.length;
+            if (length > 0 && raw[length - 1] == '\r') {
+                raw = java.util.Arrays.copyOf(raw, length - 1);
+            }
+            return raw;
+        }
+
+        /**
+         * Stop reading and put end of input after received lines (loop thread only).
+         * <p>Session isn't closed here: worker executes queued commands first 
+         * and closes session after their answers are sent.</p>
+         */
+        private void closeInput() {
+            inputClosed = true;
+            if (partialLine.size() > 0 && frameBuffer == null) {
+                //Last line without line terminator is still a line, as for thread engine
+                queueLine(takePartialLine());
+                if (closed.get()) {
+                    return;
+                }
+            }
+            inputLines.add(EOF_LINE);
+            readyUnits.incrementAndGet();
+            schedule();
+            updateInterest();
+        }
+
+        /**
+         * Keep rest of received bytes until init command is executed.
+         * @param readBuffer received bytes;
+         */
+        private void holdInput(java.nio.ByteBuffer readBuffer) {
+            int offset = heldInput == null ? 0 : heldInput.length;
+            heldInput = heldInput == null ? new byte[readBuffer.remaining()] : java.util.Arrays.copyOf(heldInput, offset + readBuffer.remaining());
+            readBuffer.get(heldInput, offset, readBuffer.remaining());
+        }
+
+        /**
+         * Continue parsing and reading after init command was executed (loop thread only).
+         */
+        private void resumeInput() {
+            handshakePending = false;
+            if (heldInput != null) {
+                java.nio.ByteBuffer held = java.nio.ByteBuffer.wrap(heldInput);
+                heldInput = null;
+                parseInput(held);
+            }
+            if (!closed.get()) {
+                updateInterest();
+            }
+        }
+
+        @Override
+        public void setFramedInput(final Boolean framed) {
+            loop.submit(() -> framedInput = framed);
+        }
+
+        /**
+         * Find out if reading should wait until worker takes queued commands.
+         * <p>Incomplete command isn't held, otherwise its end will never arrive.</p>
+         * @return true if queued input exceeds limit;
+         */
+        private Boolean isInputFull() {
+            return queuedInputBytes.get() >= INPUT_QUEUE_LIMIT && readyUnits.get() > 0;
+        }
+
+        /**
+         * Put line to input queue and count its size.
+         * @param givenLine received line;
+         */
+        private void addInput(InputLine givenLine) {
+            queuedInputBytes.addAndGet(givenLine.RAW.length);
+            inputLines.add(givenLine);
+        }
+
+        /**
+         * Put line to input queue and track command boundaries.
+         * @param raw raw line bytes;
+         * @return true if line completes command;
+         */
+        private Boolean queueLine(byte[] raw) {
+            Boolean unitEnd;
+            if (inBody && framedInput) {
+                Integer length;
+                try {
+                    length = RibbonProtocol.parseFrameHeader(new String(raw, java.nio.charset.StandardCharsets.US_ASCII));
+                } catch (java.io.IOException ex) {
+                    RibbonServer.logAppend(LOG_ID, 1, "помилка заголовку кадру (" + peerAddress + ")");
+                    shutdown();
+                    return false;
+                }
+                addInput(new InputLine(raw, false));
+                frameBuffer = new byte[length];
+                frameFilled = 0;
+                return length == 0 ? completeFrame() : false;
+            } else if (inBody) {
+                unitEnd = java.util.Arrays.equals(raw, BODY_END);
+                inBody = !unitEnd;
+            } else if (startsWithAny(raw, commandOffset(raw), BODY_COMMANDS)) {
+                inBody = true;
+                unitEnd = false;
+            } else {
+                if (startsWithAny(raw, 0, INIT_COMMAND)) {
+                    handshakePending = true;
+                    addInput(new InputLine(raw, true, true));
+                    readyUnits.incrementAndGet();
+                    return true;
+                }
+                unitEnd = true;
+            }
+            addInput(new InputLine(raw, unitEnd));
+            if (unitEnd) {
+                readyUnits.incrementAndGet();
+            }
+            return unitEnd;
+        }
+
+        /**
+         * Queue received frame payload as end of command.
+         * @return always true;
+         */
+        private Boolean completeFrame() {
+            addInput(new InputLine(frameBuffer, true));
+            readyUnits.incrementAndGet();
+            frameBuffer = null;
+            inBody = false;
+            return true;
+        }
+
+        /**
+         * Get offset of command word in raw line (skips request id of tagged command).
+         * @param raw line bytes;
+         * @return offset of command;
+         */
+        private static int commandOffset(byte[] raw) {
+            if (startsWithAny(raw, 0, TAGGED_COMMAND)) {
+                for (int index = TAGGED_COMMAND[0].length; index < raw.length; index++) {
+                    if (raw[index] == ',') {
+                        return index + 1;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Check raw line prefix.
+         * @param raw line bytes;
+         * @param offset offset of checked part of line;
+         * @param prefixes array of prefixes;
+         * @return true if line starts with one of prefixes;
+         */
+        private static Boolean startsWithAny(byte[] raw, int offset, byte[][] prefixes) {
+            for (byte[] prefix : prefixes) {
+                if (raw.length - offset < prefix.length) {
+                    continue;
+                }
+                Boolean matched = true;
+                for (int index = 0; index < prefix.length; index++) {
+                    if (raw[offset + index] != prefix[index]) {
+                        matched = false;
+                        break;
+                    }
+                }
+                if (matched) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Schedule worker task if it's not scheduled yet.
+         */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(commandTask);
+            }
+        }
+
+        /**
+         * Execute all complete commands.
+         */
+        private void runCommands() {
+            try {
+                while (readyUnits.get() > 0 && this.isAlive && !this.isOutputBlocked()) {
+                    String inputLine = this.readLine();
+                    if (inputLine == null) {
+                        //Peer closed input: all received commands are done
+                        this.ProtocolHandler.awaitPipeline();
+                        this.isAlive = false;
+                        break;
+                    }
+                    if (this.SESSION_TIP == null) {
+                        this.setSessionName();
+                    }
+                    this.processLine(inputLine);
+                    if (handshakeTaken) {
+                        handshakeTaken = false;
+                        loop.submit(() -> resumeInput());
+                    }
+                }
+            } catch (Exception ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "з'єднання аварійно разірване!");
+                this.isAlive = false;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!this.isAlive) {
+                closeAfterWrite = true;
+                loop.submit(() -> updateInterest());
+            } else if (readyUnits.get() > 0 && !this.isOutputBlocked()) {
+                schedule();
+            }
+        }
+
+        @Override
+        protected Boolean isOutputBlocked() {
+            return pendingBytes.get() >= PENDING_WRITE_LIMIT;
+        }
+
+        /**
+         * Take next line of current command.
+         * <p>Commands are executed only after all their lines were received, 
+         * so worker never waits for the peer here.</p>
+         * @return line or null if session is closed;
+         * @throws java.io.IOException if command reads beyond received lines;
+         */
+        @Override
+        public String readLine() throws java.io.IOException {
+            InputLine taken = inputLines.poll();
+            if (taken == null) {
+                throw new java.io.IOException("Command input is incomplete");
+            }
+            if (taken == EOF_LINE) {
+                inputLines.add(EOF_LINE);
+                return null;
+            }
+            if (taken.UNIT_END) {
+                readyUnits.decrementAndGet();
+            }
+            handshakeTaken = taken.HANDSHAKE;
+            queuedInputBytes.addAndGet(-taken.RAW.length);
+            if (readPaused && !isInputFull()) {
+                loop.submit(() -> updateInterest());
+            }
+            return new String(taken.RAW, inputCharset);
+        }
+
+        @Override
+        public String readFrame(Integer length) throws java.io.IOException {
+            String payload = this.readLine();
+            if (payload == null) {
+                throw new java.io.EOFException();
+            }
+            return payload;
+        }
+
+        @Override
+        public void setReaderEncoding(String charsetName) {
+            try {
+                this.inputCharset = java.nio.charset.Charset.forName(charsetName);
+            } catch (IllegalArgumentException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "неможливо встановити кодову сторінку!");
+            }
+        }
+
+        @Override
+        public void appendLnToPeer(String message) {
+            try {
+                outStream.printLn(message);
+            } catch (java.io.IOException ex) {}
+        }
+
+        @Override
+        public void writeToPeer(byte[] raw) {
+            try {
+                outStream.write(raw);
+            } catch (java.io.IOException ex) {}
+        }
+
+        @Override
+        public void flushPeer() {
+            try {
+                outStream.flush();
+            } catch (java.io.IOException ex) {}
+        }
+
+        @Override
+        public void transferToPeer(java.nio.channels.FileChannel file, long length) {
+            flushPeer();
+            synchronized (writeLock) {
+                if (closed.get()) {
+                    closeQuietly(file);
+                    return;
+                }
+                if (deflater == null) {
+                    pendingWrites.add(new FileRegion(file, length));
+                    loop.submit(() -> updateInterest());
+                    return;
+                }
+            }
+            //Compressed output can't use zero-copy, so file is readed to the heap
+            try {
+                java.nio.ByteBuffer content = java.nio.ByteBuffer.allocate((int) length);
+                while (content.hasRemaining() && file.read(content) > 0) {}
+                outStream.write(java.util.Arrays.copyOf(content.array(), content.position()));
+                if (content.hasRemaining()) {
+                    outStream.write(SessionManager.SessionOutput.getPadding(content.remaining()));
+                }
+            } catch (java.io.IOException ex) {
+                RibbonServer.logAppend(LOG_ID, 1, "помилка зчитування файлу для сесії (" + peerAddress + ")");
+            } finally {
+                closeQuietly(file);
+            }
+        }
+
+        @Override
+        public java.nio.charset.Charset getOutputCharset() {
+            return outputCharset;
+        }
+
+        @Override
+        public void enableCompression() {
+            synchronized (writeLock) {
+                if (deflater == null && !closed.get()) {
+                    deflater = new java.util.zip.Deflater();
+                }
+            }
+        }
+
+        /**
+         * Compress (if needed) and queue bytes for write.
+         * @param raw bytes to send;
+         */
+        private void queueWrite(byte[] raw) {
+            if (closed.get()) {
+                return;
+            }
+            synchronized (writeLock) {
+                byte[] queued = deflater == null ? raw : deflate(raw);
+                pendingBytes.addAndGet(queued.length);
+                pendingWrites.add(java.nio.ByteBuffer.wrap(queued));
+            }
+            loop.submit(() -> updateInterest());
+        }
+
+        /**
+         * Compress bytes and finish them by sync flush.
+         * @param raw bytes to compress;
+         * @return compressed bytes;
+         */
+        private byte[] deflate(byte[] raw) {
+            deflater.setInput(raw);
+            java.io.ByteArrayOutputStream compressed = new java.io.ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] chunk = new byte[Math.max(512, Math.min(raw.length, READ_BUFFER_SIZE))];
+            int length;
+            do {
+                length = deflater.deflate(chunk, 0, chunk.length, java.util.zip.Deflater.SYNC_FLUSH);
+                compressed.write(chunk, 0, length);
+            } while (length == chunk.length);
+            return compressed.toByteArray();
+        }
+
+        /**
+         * Write pending buffers to the channel.
+         * @throws java.io.IOException
+         */
+        private void handleWrite() throws java.io.IOException {
+            Object currWrite;
+            while ((currWrite = pendingWrites.peek()) != null) {
+                if (currWrite instanceof FileRegion) {
+                    if (!((FileRegion) currWrite).writeTo(channel)) {
+                        break;
+                    }
+                } else {
+                    java.nio.ByteBuffer currBuffer = (java.nio.ByteBuffer) currWrite;
+                    pendingBytes.addAndGet(-channel.write(currBuffer));
+                    if (currBuffer.hasRemaining()) {
+                        break;
+                    }
+                }
+                pendingWrites.poll();
+            }
+            updateInterest();
+            if (!this.isOutputBlocked()) {
+                //Peer has read enough, so held commands and broadcasts may continue
+                if (readyUnits.get() > 0) {
+                    schedule();
+                }
+                this.resumeOutbound();
+            }
+        }
+
+        /**
+         * Update selector interest according to session state (loop thread only).
+         */
+        private void updateInterest() {
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            if (pendingWrites.isEmpty() && closeAfterWrite) {
+                shutdown();
+                return;
+            }
+            readPaused = handshakePending || isInputFull();
+            int interest = readPaused || inputClosed ? 0 : java.nio.channels.SelectionKey.OP_READ;
+            if (!pendingWrites.isEmpty()) {
+                interest |= java.nio.channels.SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+
+        /**
+         * Close channel and remove session.
+         */
+        private void shutdown() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            inputLines.add(EOF_LINE);
+            Object pendingWrite;
+            while ((pendingWrite = pendingWrites.poll()) != null) {
+                if (pendingWrite instanceof FileRegion) {
+                    ((FileRegion) pendingWrite).close();
+                }
+            }
+            synchronized (writeLock) {
+                if (deflater != null) {
+                    deflater.end();
+                    deflater = null;
+                }
+            }
+            this.isAlive = false;
+            RibbonServer.logAppend(LOG_ID, 3, "мережеву сесію зачинено (" + peerAddress + ")");
+            SessionManager.closeSession(this);
+        }
+
+        @Override
+        public void closeConnection() {
+            this.isAlive = false;
+            loop.submit(() -> shutdown());
+        }
+        
+        @Override
+        public String getPeerAddress() {
+            return this.peerAddress;
+        }
+
+        @Override
+        public String getPeerHostName() {
+            return this.channel.socket().getInetAddress().getHostName();
+        }
+    }
+}